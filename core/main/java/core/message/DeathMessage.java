@@ -0,0 +1,30 @@
+package core.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import core.util.Networking;
+import network.message.FrameWriter;
+import network.message.MessageReader;
+
+/**
+ * A player's death. Sent with {@link Networking.Server#TemperatureDeath} and {@link Networking.Server#HitDamageDeath},
+ * and relayed with {@link Networking.Client#PlayerTemperatureDeath} and {@link Networking.Client#PlayerHitDamageDeath}.
+ *
+ * @param killer the player whose snowball was the last to hit, or {@link #NoKiller}.
+ */
+public record DeathMessage(int player, int killer) {
+
+    public static final int NoKiller = Integer.MIN_VALUE;
+    public static final int Size = Integer.BYTES * 2;
+
+    public static DeathMessage read(MessageReader message) throws IOException {
+        ByteBuffer layout = message.fixed(Size);
+        return new DeathMessage(layout.getInt(), layout.getInt());
+    }
+
+    public FrameWriter writeTo(FrameWriter message) {
+        message.fixed(Size).putInt(player).putInt(killer);
+        return message;
+    }
+}
@@ -0,0 +1,171 @@
+package core.message;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import network.message.BitReader;
+import network.message.BitWriter;
+
+/**
+ * One kind of entity in a {@link Snapshot}, where every entity has the same quantized fields. Entities are kept sorted
+ * by id, so two tables can be compared in a single pass.
+ * <p>
+ * A table is written as the changes from a baseline table: entities that were added or removed, and for entities that
+ * changed, a mask of their changed fields followed by just those fields. Unchanged entities cost nothing.
+ */
+public final class EntityTable {
+
+    public static final int IdBits = 16;
+
+    private static final int ChangeBits = 2;
+    private static final int Changed = 0;
+    private static final int Added = 1;
+    private static final int Removed = 2;
+    private static final int InitialCapacity = 16;
+
+    private final int[] fieldBits;
+    private int[] ids = new int[InitialCapacity];
+    private int[] values;
+    private int size;
+
+    public EntityTable(int... fieldBits) {
+        this.fieldBits = fieldBits.clone();
+        values = new int[InitialCapacity * fieldBits.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    public int get(int index, int field) {
+        return values[index * fieldBits.length + field];
+    }
+
+    public void set(int index, int field, int value) {
+        values[index * fieldBits.length + field] = value;
+    }
+
+    /** @return the index of the entity with {@code id}, or -1 if the table doesn't have one. */
+    public int indexOf(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        return index >= 0 ? index : -1;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends an entity with every field set to 0.
+     *
+     * @return the new entity's index.
+     * @throws IllegalArgumentException if {@code id} doesn't fit in {@link #IdBits}, or isn't greater than every id
+     *                                  already in the table.
+     */
+    public int add(int id) {
+        if (id < 0 || id >>> IdBits != 0 || (size > 0 && id <= ids[size - 1])) {
+            throw new IllegalArgumentException("Entity " + id + " is out of range or out of order.");
+        }
+
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            values = Arrays.copyOf(values, size * 2 * fieldBits.length);
+        }
+
+        ids[size] = id;
+        Arrays.fill(values, size * fieldBits.length, (size + 1) * fieldBits.length, 0);
+        return size++;
+    }
+
+    private int copyEntity(EntityTable from, int fromIndex) {
+        int index = add(from.ids[fromIndex]);
+        System.arraycopy(from.values, fromIndex * fieldBits.length, values, index * fieldBits.length, fieldBits.length);
+        return index;
+    }
+
+    void writeDelta(EntityTable baseline, BitWriter writer) {
+        int baselineIndex = 0;
+        int index = 0;
+        while (baselineIndex < baseline.size || index < size) {
+            int baselineId = baselineIndex < baseline.size ? baseline.ids[baselineIndex] : Integer.MAX_VALUE;
+            int id = index < size ? ids[index] : Integer.MAX_VALUE;
+
+            if (id == baselineId) {
+                int changedFields = changedFields(baseline, baselineIndex, index);
+                if (changedFields != 0) {
+                    writer.writeBoolean(true).write(id, IdBits).write(Changed, ChangeBits).write(changedFields, fieldBits.length);
+                    writeFields(index, changedFields, writer);
+                }
+                baselineIndex++;
+                index++;
+            } else if (id < baselineId) {
+                writer.writeBoolean(true).write(id, IdBits).write(Added, ChangeBits);
+                writeFields(index, -1, writer);
+                index++;
+            } else {
+                writer.writeBoolean(true).write(baselineId, IdBits).write(Removed, ChangeBits);
+                baselineIndex++;
+            }
+        }
+
+        writer.writeBoolean(false);
+    }
+
+    /** Replaces this table's entities with {@code baseline}'s, changed as a delta from the {@code reader} describes. */
+    void readDelta(EntityTable baseline, BitReader reader) throws IOException {
+        clear();
+        int baselineIndex = 0;
+        while (reader.readBoolean()) {
+            int id = reader.read(IdBits);
+            int change = reader.read(ChangeBits);
+            while (baselineIndex < baseline.size && baseline.ids[baselineIndex] < id) {
+                copyEntity(baseline, baselineIndex++);
+            }
+
+            boolean isInBaseline = baselineIndex < baseline.size && baseline.ids[baselineIndex] == id;
+            if (change == Added && !isInBaseline && (size == 0 || id > ids[size - 1])) {
+                readFields(add(id), -1, reader);
+            } else if (change == Changed && isInBaseline) {
+                readFields(copyEntity(baseline, baselineIndex++), reader.read(fieldBits.length), reader);
+            } else if (change == Removed && isInBaseline) {
+                baselineIndex++;
+            } else {
+                throw new IOException("Entity " + id + " doesn't match its baseline.");
+            }
+        }
+
+        while (baselineIndex < baseline.size) {
+            copyEntity(baseline, baselineIndex++);
+        }
+    }
+
+    private int changedFields(EntityTable baseline, int baselineIndex, int index) {
+        int changedFields = 0;
+        for (int field = 0; field < fieldBits.length; field++) {
+            if (baseline.get(baselineIndex, field) != get(index, field)) {
+                changedFields |= 1 << field;
+            }
+        }
+        return changedFields;
+    }
+
+    private void writeFields(int index, int fields, BitWriter writer) {
+        for (int field = 0; field < fieldBits.length; field++) {
+            if ((fields & (1 << field)) != 0) {
+                writer.write(get(index, field), fieldBits[field]);
+            }
+        }
+    }
+
+    private void readFields(int index, int fields, BitReader reader) throws IOException {
+        for (int field = 0; field < fieldBits.length; field++) {
+            if ((fields & (1 << field)) != 0) {
+                set(index, field, reader.read(fieldBits[field]));
+            }
+        }
+    }
+}
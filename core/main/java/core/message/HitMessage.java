@@ -0,0 +1,28 @@
+package core.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import core.util.Networking;
+import network.message.FrameWriter;
+import network.message.MessageReader;
+
+/**
+ * A snowball hitting a player, as decided by the server. Sent with {@link Networking.Client#PlayerHit}.
+ *
+ * @param snowball the snowball's id in {@link Snapshot#snowballs()}.
+ */
+public record HitMessage(int snowball, int player, int thrower) {
+
+    public static final int Size = Integer.BYTES * 3;
+
+    public static HitMessage read(MessageReader message) throws IOException {
+        ByteBuffer layout = message.fixed(Size);
+        return new HitMessage(layout.getInt(), layout.getInt(), layout.getInt());
+    }
+
+    public FrameWriter writeTo(FrameWriter message) {
+        message.fixed(Size).putInt(snowball).putInt(player).putInt(thrower);
+        return message;
+    }
+}
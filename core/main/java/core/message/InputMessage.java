@@ -0,0 +1,31 @@
+package core.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import core.util.Input;
+import core.util.Networking;
+import network.message.FrameWriter;
+import network.message.MessageReader;
+
+/**
+ * The {@link Input} bits a player holds, numbered so the player can tell which of its inputs the server has applied.
+ * Sent with {@link Networking.Server#Input}.
+ *
+ * @param sequence wraps around after 65535.
+ */
+public record InputMessage(int sequence, int inputs) {
+
+    public static final int SequenceBits = Short.SIZE;
+    public static final int Size = Short.BYTES + Byte.BYTES;
+
+    public static InputMessage read(MessageReader message) throws IOException {
+        ByteBuffer layout = message.fixed(Size);
+        return new InputMessage(layout.getShort() & 0xFFFF, layout.get() & 0xFF);
+    }
+
+    public FrameWriter writeTo(FrameWriter message) {
+        message.fixed(Size).putShort((short) sequence).put((byte) inputs);
+        return message;
+    }
+}
@@ -0,0 +1,26 @@
+package core.message;
+
+import java.io.IOException;
+
+import core.util.Networking;
+import network.message.FrameWriter;
+import network.message.MessageReader;
+
+/**
+ * Names a player. Sent with {@link Networking.Client#AssignPlayer}, {@link Networking.Client#AddPlayer},
+ * {@link Networking.Client#RemovePlayer} and {@link Networking.Client#PlayerWins}.
+ */
+public record PlayerMessage(int player) {
+
+    /** Bit-packed messages assume player numbers fit in this many bits. */
+    public static final int PlayerBits = 16;
+    public static final int Size = Integer.BYTES;
+
+    public static PlayerMessage read(MessageReader message) throws IOException {
+        return new PlayerMessage(message.readInt());
+    }
+
+    public FrameWriter writeTo(FrameWriter message) {
+        return message.writeInt(player);
+    }
+}
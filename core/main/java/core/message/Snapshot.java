@@ -0,0 +1,116 @@
+package core.message;
+
+import java.io.IOException;
+
+import core.util.Input;
+import core.util.Networking;
+import network.message.BitReader;
+import network.message.BitWriter;
+import network.message.FrameWriter;
+import network.message.MessageReader;
+
+/**
+ * Every player and live snowball at one moment, quantized as they are sent. Sent with
+ * {@link Networking.Client#WorldSnapshot}, as the changes from a snapshot the client acknowledged.
+ */
+public final class Snapshot {
+
+    public static final int NoSequence = -1;
+    public static final int HeaderSize = Integer.BYTES * 3;
+
+    public static final int PlayerX = 0;
+    public static final int PlayerY = 1;
+    public static final int PlayerRotation = 2;
+    public static final int PlayerInputs = 3;
+    /** The low bits of the sequence of the {@link InputMessage} that set {@link #PlayerInputs}. */
+    public static final int PlayerInputSequence = 4;
+    /** The low bits of the server tick {@link #PlayerInputs} were first applied on. */
+    public static final int PlayerInputTick = 5;
+    public static final int TickBits = 16;
+
+    public static final int SnowballOwner = 0;
+    public static final int SnowballX = 1;
+    public static final int SnowballY = 2;
+    public static final int SnowballRotation = 3;
+
+    private static final Snapshot Empty = new Snapshot();
+
+    private final EntityTable players = new EntityTable(
+            TransformMessage.X.bits(),
+            TransformMessage.Y.bits(),
+            TransformMessage.Rotation.bits(),
+            Input.Bits,
+            InputMessage.SequenceBits,
+            TickBits
+    );
+    private final EntityTable snowballs = new EntityTable(
+            PlayerMessage.PlayerBits,
+            TransformMessage.X.bits(),
+            TransformMessage.Y.bits(),
+            TransformMessage.Rotation.bits()
+    );
+    private int sequence = NoSequence;
+    private int tick;
+
+    public int sequence() {
+        return sequence;
+    }
+
+    /** @return the server tick the snapshot was taken on. */
+    public int tick() {
+        return tick;
+    }
+
+    public void setTick(int tick) {
+        this.tick = tick;
+    }
+
+    /** @return the tick at or before {@link #tick()} with the low {@link #TickBits} bits {@code tickBits}. */
+    public int tickNear(int tickBits) {
+        return tick - ((tick - tickBits) & ((1 << TickBits) - 1));
+    }
+
+    /** Players, by player number. */
+    public EntityTable players() {
+        return players;
+    }
+
+    /** Live snowballs, by snowball id. */
+    public EntityTable snowballs() {
+        return snowballs;
+    }
+
+    /** Empties the snapshot, so it can be filled in as snapshot {@code sequence}. */
+    public void clear(int sequence) {
+        this.sequence = sequence;
+        tick = 0;
+        players.clear();
+        snowballs.clear();
+    }
+
+    /** Writes the snapshot as the changes from {@code baseline}, or in full if {@code baseline} is {@code null}. */
+    public FrameWriter writeTo(FrameWriter message, Snapshot baseline) {
+        Snapshot from = baseline != null ? baseline : Empty;
+        message.writeInt(sequence).writeInt(from.sequence).writeInt(tick);
+
+        BitWriter writer = new BitWriter(message);
+        players.writeDelta(from.players, writer);
+        snowballs.writeDelta(from.snowballs, writer);
+        return writer.finish();
+    }
+
+    /** Replaces this snapshot with the one in {@code message}, rebuilt from {@code baseline}. */
+    public void readFrom(MessageReader message, Snapshot baseline) throws IOException {
+        Snapshot from = baseline != null ? baseline : Empty;
+        int newSequence = message.readInt();
+        if (message.readInt() != from.sequence) {
+            throw new IOException("Snapshot " + newSequence + " was read against the wrong baseline.");
+        }
+
+        sequence = newSequence;
+        tick = message.readInt();
+        BitReader reader = new BitReader(message);
+        players.readDelta(from.players, reader);
+        snowballs.readDelta(from.snowballs, reader);
+    }
+}
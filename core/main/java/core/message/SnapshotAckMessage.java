@@ -0,0 +1,21 @@
+package core.message;
+
+import java.io.IOException;
+
+import core.util.Networking;
+import network.message.FrameWriter;
+import network.message.MessageReader;
+
+/** The newest {@link Snapshot} a client has rebuilt. Sent with {@link Networking.Server#SnapshotAck}. */
+public record SnapshotAckMessage(int sequence) {
+
+    public static final int Size = Integer.BYTES;
+
+    public static SnapshotAckMessage read(MessageReader message) throws IOException {
+        return new SnapshotAckMessage(message.readInt());
+    }
+
+    public FrameWriter writeTo(FrameWriter message) {
+        return message.writeInt(sequence);
+    }
+}
@@ -0,0 +1,81 @@
+package core.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import network.message.MessageReader;
+
+/** The most recent snapshots sent or received, kept as baselines for the snapshots that follow them. */
+public final class SnapshotHistory {
+
+    public static final int Size = 32;
+
+    private final Snapshot[] snapshots = new Snapshot[Size];
+    private int newestSequence = Snapshot.NoSequence;
+
+    public SnapshotHistory() {
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new Snapshot();
+        }
+    }
+
+    public int newestSequence() {
+        return newestSequence;
+    }
+
+    /** @return snapshot {@code sequence}, or {@code null} if it has been replaced by a newer one or never existed. */
+    public Snapshot get(int sequence) {
+        if (sequence < 0) {
+            return null;
+        }
+
+        Snapshot snapshot = snapshots[sequence % Size];
+        return snapshot.sequence() == sequence ? snapshot : null;
+    }
+
+    /** Empties the oldest snapshot, and returns it to be filled in as the newest. */
+    public Snapshot next() {
+        newestSequence++;
+        Snapshot snapshot = snapshots[newestSequence % Size];
+        snapshot.clear(newestSequence);
+        return snapshot;
+    }
+
+    /**
+     * Rebuilds the snapshot in {@code message} from the baseline it was written against, keeping it as the newest.
+     *
+     * @return the snapshot; or {@code null} if it's older than the newest, or its baseline is no longer held.
+     */
+    public Snapshot read(MessageReader message) throws IOException {
+        ByteBuffer header = message.fixed(Snapshot.HeaderSize);
+        int sequence = header.getInt(header.position());
+        int baselineSequence = header.getInt(header.position() + Integer.BYTES);
+        if (sequence < 0 || baselineSequence >= sequence) {
+            throw new IOException("Snapshot " + sequence + " has a bad baseline " + baselineSequence + ".");
+        }
+
+        if (sequence <= newestSequence) {
+            return null;
+        }
+
+        Snapshot baseline = null;
+        if (baselineSequence != Snapshot.NoSequence) {
+            baseline = get(baselineSequence);
+            // the baseline's place was taken, or would be taken by this snapshot.
+            if (baseline == null || sequence - baselineSequence >= Size) {
+                return null;
+            }
+        }
+
+        Snapshot snapshot = snapshots[sequence % Size];
+        try {
+            snapshot.readFrom(message, baseline);
+        } catch (IOException exception) {
+            snapshot.clear(Snapshot.NoSequence);
+            throw exception;
+        }
+
+        newestSequence = sequence;
+        return snapshot;
+    }
+}
@@ -0,0 +1,51 @@
+package core.message;
+
+import java.io.IOException;
+
+import core.util.Networking;
+import network.message.BitReader;
+import network.message.BitWriter;
+import network.message.FrameWriter;
+import network.message.MessageReader;
+import network.message.Quantizer;
+
+/**
+ * A snowball thrown along a unit-length trajectory. The server throws it from where it has the thrower, not from where
+ * the thrower's client says it is. Sent with {@link Networking.Server#CreateSnowball}.
+ *
+ * @param snapshot the newest snapshot the thrower had applied, so the server can judge hits against what it saw. Only
+ *                 its low {@link #SnapshotBits} bits are sent; see {@link #snapshotNear(int)}.
+ */
+public record SnowballMessage(float trajectoryX, float trajectoryY, float rotation, int snapshot) {
+
+    public static final Quantizer Trajectory = Quantizer.range(-1f, 1f, 0.002f);
+    public static final int SnapshotBits = 16;
+
+    public static final int Bits = Trajectory.bits() * 2 + TransformMessage.Rotation.bits() + SnapshotBits;
+    public static final int Size = (Bits + Byte.SIZE - 1) / Byte.SIZE;
+
+    public static SnowballMessage read(MessageReader message) throws IOException {
+        BitReader reader = new BitReader(message);
+        return new SnowballMessage(
+                Trajectory.read(reader),
+                Trajectory.read(reader),
+                TransformMessage.Rotation.read(reader),
+                reader.read(SnapshotBits)
+        );
+    }
+
+    /** @return the snapshot sequence at or before {@code newestSequence} that has the sent low bits. */
+    public int snapshotNear(int newestSequence) {
+        int snapshotMask = (1 << SnapshotBits) - 1;
+        return newestSequence - ((newestSequence - snapshot) & snapshotMask);
+    }
+
+    public FrameWriter writeTo(FrameWriter message) {
+        BitWriter writer = new BitWriter(message);
+        Trajectory.write(writer, trajectoryX);
+        Trajectory.write(writer, trajectoryY);
+        TransformMessage.Rotation.write(writer, rotation);
+        writer.write(snapshot & ((1 << SnapshotBits) - 1), SnapshotBits);
+        return writer.finish();
+    }
+}
@@ -0,0 +1,36 @@
+package core.message;
+
+import java.io.IOException;
+
+import core.util.Networking;
+import network.message.BitReader;
+import network.message.BitWriter;
+import network.message.FrameWriter;
+import network.message.MessageReader;
+import network.message.Quantizer;
+
+/**
+ * A player's position and rotation, quantized to half a pixel and about a third of a degree. Positions are clamped to
+ * the screen-sized arena plus a screen's margin on each side. Sent with {@link Networking.Server#SyncTransform}.
+ */
+public record TransformMessage(float x, float y, float rotation) {
+
+    public static final Quantizer X = Quantizer.range(-640f, 1920f, 0.5f);
+    public static final Quantizer Y = Quantizer.range(-360f, 1080f, 0.5f);
+    public static final Quantizer Rotation = Quantizer.angle(0.5f);
+
+    public static final int Bits = X.bits() + Y.bits() + Rotation.bits();
+    public static final int Size = (Bits + Byte.SIZE - 1) / Byte.SIZE;
+
+    public static TransformMessage read(MessageReader message) throws IOException {
+        BitReader reader = new BitReader(message);
+        return new TransformMessage(X.read(reader), Y.read(reader), Rotation.read(reader));
+    }
+
+    public FrameWriter writeTo(FrameWriter message) {
+        BitWriter writer = new BitWriter(message);
+        X.write(writer, x);
+        Y.write(writer, y);
+        return Rotation.write(writer, rotation).finish();
+    }
+}
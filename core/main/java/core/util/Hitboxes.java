@@ -0,0 +1,16 @@
+package core.util;
+
+/**
+ * Bounds of the player and snowball models, for hit detection. A player is a box turning about its center, offset from
+ * its position by its half-size. A snowball is a circle centered on its position.
+ */
+public class Hitboxes {
+    public static final float PlayerHalfWidth = 25f;
+    public static final float PlayerHalfHeight = 25f;
+    public static final float SnowballRadius = 8f;
+
+    /** @return the radius of the circle a player's box stays within as it turns. */
+    public static float playerReach() {
+        return (float) Math.hypot(PlayerHalfWidth, PlayerHalfHeight);
+    }
+}
@@ -0,0 +1,25 @@
+package core.util;
+
+/**
+ * Bits of the input bitmask a player sends with {@link Networking.Server#Input}, and the server sends back in each
+ * {@link Networking.Client#WorldSnapshot}. A set bit means the key is held.
+ */
+public class Input {
+    public static final int Forward = 1;
+    public static final int TurnLeft = 1 << 1;
+    public static final int Backward = 1 << 2;
+    public static final int TurnRight = 1 << 3;
+    public static final int ThrowSnowball = 1 << 4;
+    public static final int MakeSnowball = 1 << 5;
+
+    public static final int All = Forward | TurnLeft | Backward | TurnRight | ThrowSnowball | MakeSnowball;
+    public static final int Bits = Integer.SIZE - Integer.numberOfLeadingZeros(All);
+
+    public static boolean isValid(int inputs) {
+        return (inputs & ~All) == 0;
+    }
+
+    public static boolean isHeld(int inputs, int input) {
+        return (inputs & input) != 0;
+    }
+}
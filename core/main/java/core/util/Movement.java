@@ -0,0 +1,51 @@
+package core.util;
+
+/**
+ * How far things move each tick at {@link Networking#TickRate}, shared so the server moves them as clients do.
+ * Rotations are in degrees, clockwise from facing up the screen.
+ */
+public class Movement {
+    public static final float PlayerSpeed = 5f;
+    public static final float PlayerTurnSpeed = 5f;
+    public static final float SnowballSpeed = 25f;
+    public static final float SnowballMinDistance = 700f;
+    public static final float SnowballMaxDistance = 1000f;
+
+    /** @return how far a player holding {@code inputs} moves along its facing in a tick; negative is backward. */
+    public static float speedOf(int inputs) {
+        float speed = 0f;
+        if (Input.isHeld(inputs, Input.Forward)) {
+            speed += PlayerSpeed;
+        }
+        if (Input.isHeld(inputs, Input.Backward)) {
+            speed -= PlayerSpeed;
+        }
+        return speed;
+    }
+
+    /** @return how far a player holding {@code inputs} turns in a tick. */
+    public static float turnOf(int inputs) {
+        float turn = 0f;
+        if (Input.isHeld(inputs, Input.TurnLeft)) {
+            turn -= PlayerTurnSpeed;
+        }
+        if (Input.isHeld(inputs, Input.TurnRight)) {
+            turn += PlayerTurnSpeed;
+        }
+        return turn;
+    }
+
+    public static float forwardX(float rotation) {
+        return (float) Math.sin(Math.toRadians(rotation));
+    }
+
+    public static float forwardY(float rotation) {
+        return (float) -Math.cos(Math.toRadians(rotation));
+    }
+
+    /** @return {@code rotation} turned by {@code turn}, kept within [0, 360). */
+    public static float turn(float rotation, float turn) {
+        float turned = (rotation + turn) % 360f;
+        return turned < 0f ? turned + 360f : turned;
+    }
+}
@@ -1,3 +1,5 @@
 module tech.fastj.multiplayer.core {
+    requires transitive tech.fastj.simplenet;
+    exports core.message;
     exports core.util;
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+package core.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import network.message.BitReader;
+import network.message.BitWriter;
+import network.message.FrameWriter;
+import network.message.MessageReader;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EntityTableTest {
+
+    private static final int Health = 0;
+    private static final int Score = 1;
+
+    private final FrameWriter frame = new FrameWriter();
+
+    @Test
+    void deltaRebuildsTheTableFromItsBaseline() throws IOException {
+        EntityTable baseline = table();
+        entity(baseline, 1, 3, 10);
+        entity(baseline, 4, 5, 20);
+        entity(baseline, 7, 9, 30);
+
+        EntityTable current = table();
+        entity(current, 2, 1, 1); // added
+        entity(current, 4, 5, 21); // changed
+        entity(current, 7, 9, 30); // unchanged, and entity 1 removed
+        entity(current, 9, 15, 255); // added after every baseline entity
+
+        EntityTable received = roundTrip(current, baseline);
+        assertTablesEqual(current, received);
+    }
+
+    @Test
+    void unchangedTableCostsOneBit() throws IOException {
+        EntityTable baseline = table();
+        entity(baseline, 1, 3, 10);
+        entity(baseline, 2, 4, 11);
+        EntityTable current = table();
+        entity(current, 1, 3, 10);
+        entity(current, 2, 4, 11);
+
+        MessageReader message = new MessageReader().wrapFrame(encode(current, baseline));
+        assertEquals(1, message.remaining());
+        assertEquals(0, message.readUnsignedByte());
+    }
+
+    @Test
+    void onlyChangedFieldsAreSent() throws IOException {
+        EntityTable baseline = table();
+        entity(baseline, 1, 3, 10);
+        EntityTable current = table();
+        entity(current, 1, 3, 11);
+
+        // more, id, change type, field mask, score, end.
+        int expectedBits = 1 + EntityTable.IdBits + 2 + 2 + 8 + 1;
+        MessageReader message = new MessageReader().wrapFrame(encode(current, baseline));
+        assertEquals((expectedBits + 7) / 8, message.remaining());
+    }
+
+    @Test
+    void emptyBaselineSendsEveryEntityInFull() throws IOException {
+        EntityTable current = table();
+        entity(current, 0, 15, 255);
+        entity(current, 0xFFFF, 1, 2);
+
+        assertTablesEqual(current, roundTrip(current, table()));
+    }
+
+    @Test
+    void rejectsDeltasThatDontMatchTheBaseline() throws IOException {
+        EntityTable baseline = table();
+        entity(baseline, 1, 3, 10);
+        EntityTable current = table();
+        entity(current, 1, 3, 11);
+        ByteBuffer changed = encode(current, baseline);
+
+        // entity 1 is changed, but the reader's baseline doesn't have it.
+        BitReader reader = new BitReader(new MessageReader().wrapFrame(changed));
+        assertThrows(IOException.class, () -> table().readDelta(table(), reader));
+    }
+
+    @Test
+    void entitiesMustBeAddedInIdOrder() {
+        EntityTable table = table();
+        table.add(5);
+
+        assertThrows(IllegalArgumentException.class, () -> table.add(5));
+        assertThrows(IllegalArgumentException.class, () -> table.add(4));
+        assertThrows(IllegalArgumentException.class, () -> table.add(-1));
+        assertThrows(IllegalArgumentException.class, () -> table.add(1 << EntityTable.IdBits));
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        EntityTable table = table();
+        for (int id = 0; id < 100; id++) {
+            entity(table, id, id & 15, id);
+        }
+
+        assertEquals(100, table.size());
+        assertEquals(63, table.indexOf(63));
+        assertEquals(99, table.get(99, Score));
+        assertEquals(-1, table.indexOf(100));
+    }
+
+    private static EntityTable table() {
+        return new EntityTable(4, 8);
+    }
+
+    private static void entity(EntityTable table, int id, int health, int score) {
+        int index = table.add(id);
+        table.set(index, Health, health);
+        table.set(index, Score, score);
+    }
+
+    /** @return a copy of the frame holding the delta. */
+    private ByteBuffer encode(EntityTable current, EntityTable baseline) throws IOException {
+        frame.begin((byte) 1);
+        BitWriter writer = new BitWriter(frame);
+        current.writeDelta(baseline, writer);
+        ByteBuffer encoded = writer.finish().finish();
+        return ByteBuffer.allocate(encoded.remaining()).put(encoded).flip();
+    }
+
+    private EntityTable roundTrip(EntityTable current, EntityTable baseline) throws IOException {
+        EntityTable received = table();
+        received.readDelta(baseline, new BitReader(new MessageReader().wrapFrame(encode(current, baseline))));
+        return received;
+    }
+
+    private static void assertTablesEqual(EntityTable expected, EntityTable actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.id(i), actual.id(i), "id at " + i);
+            assertEquals(expected.get(i, Health), actual.get(i, Health), "health of " + expected.id(i));
+            assertEquals(expected.get(i, Score), actual.get(i, Score), "score of " + expected.id(i));
+        }
+    }
+}
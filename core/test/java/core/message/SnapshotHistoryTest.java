@@ -0,0 +1,162 @@
+package core.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import network.message.FrameWriter;
+import network.message.MessageReader;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotHistoryTest {
+
+    private final SnapshotHistory sent = new SnapshotHistory();
+    private final SnapshotHistory received = new SnapshotHistory();
+
+    @Test
+    void firstSnapshotIsSentInFull() throws IOException {
+        Snapshot snapshot = sent.next();
+        snapshot.setTick(7);
+        player(snapshot, 1, 100, 200);
+        snowball(snapshot, 3, 1, 50);
+
+        Snapshot rebuilt = received.read(read(encode(snapshot, null)));
+        assertNotNull(rebuilt);
+        assertSnapshotsEqual(snapshot, rebuilt);
+        assertEquals(0, received.newestSequence());
+    }
+
+    @Test
+    void laterSnapshotsAreRebuiltFromTheirBaseline() throws IOException {
+        Snapshot first = sent.next();
+        player(first, 1, 100, 200);
+        player(first, 2, 300, 400);
+        snowball(first, 5, 2, 60);
+        ByteBuffer full = encode(first, null);
+        received.read(read(full));
+
+        Snapshot second = sent.next();
+        second.setTick(1);
+        player(second, 1, 101, 200);
+        player(second, 2, 300, 400);
+        snowball(second, 6, 1, 70);
+        ByteBuffer delta = encode(second, first);
+
+        Snapshot rebuilt = received.read(read(delta));
+        assertNotNull(rebuilt);
+        assertSnapshotsEqual(second, rebuilt);
+        assertTrue(delta.remaining() < encode(second, null).remaining(), "the delta is bigger than a full snapshot");
+
+        // the baseline itself is left alone.
+        assertSnapshotsEqual(first, received.get(0));
+    }
+
+    @Test
+    void snapshotWithAMissingBaselineIsSkipped() throws IOException {
+        Snapshot lost = sent.next();
+        player(lost, 1, 100, 200);
+        Snapshot next = sent.next();
+        player(next, 1, 110, 200);
+
+        // the first snapshot never arrived, so the second has nothing to be rebuilt from.
+        assertNull(received.read(read(encode(next, lost))));
+        assertEquals(Snapshot.NoSequence, received.newestSequence());
+        assertNull(received.get(1));
+    }
+
+    @Test
+    void snapshotWhoseBaselineWasReplacedIsSkipped() throws IOException {
+        Snapshot baseline = sent.next();
+        received.read(read(encode(baseline, null)));
+
+        // held apart from the history, which reuses the baseline's place for the late snapshot.
+        Snapshot late = new Snapshot();
+        late.clear(SnapshotHistory.Size);
+
+        assertNull(received.read(read(encode(late, baseline))));
+        assertEquals(0, received.newestSequence());
+    }
+
+    @Test
+    void olderSnapshotsAreIgnored() throws IOException {
+        ByteBuffer first = encode(sent.next(), null);
+        ByteBuffer second = encode(sent.next(), null);
+
+        assertNotNull(received.read(read(second)));
+        assertNull(received.read(read(first)));
+        assertEquals(1, received.newestSequence());
+    }
+
+    @Test
+    void rejectsBaselinesThatArentOlder() {
+        FrameWriter message = new FrameWriter().begin((byte) 1).writeInt(4).writeInt(4).writeInt(0);
+
+        assertThrows(IOException.class, () -> received.read(read(message.finish())));
+    }
+
+    @Test
+    void snapshotReadAgainstTheWrongBaselineFails() throws IOException {
+        Snapshot first = sent.next();
+        Snapshot second = sent.next();
+        ByteBuffer delta = encode(second, first);
+
+        assertThrows(IOException.class, () -> new Snapshot().readFrom(read(delta), null));
+    }
+
+    @Test
+    void tickNearRestoresTheHighBits() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.setTick(70_000);
+
+        assertEquals(70_000, snapshot.tickNear(70_000 & 0xFFFF));
+        assertEquals(69_990, snapshot.tickNear(69_990 & 0xFFFF));
+        assertEquals(65_535, snapshot.tickNear(65_535));
+    }
+
+    private static void player(Snapshot snapshot, int playerNumber, int x, int y) {
+        EntityTable players = snapshot.players();
+        int index = players.add(playerNumber);
+        players.set(index, Snapshot.PlayerX, x);
+        players.set(index, Snapshot.PlayerY, y);
+        players.set(index, Snapshot.PlayerInputs, 1);
+    }
+
+    private static void snowball(Snapshot snapshot, int id, int owner, int x) {
+        EntityTable snowballs = snapshot.snowballs();
+        int index = snowballs.add(id);
+        snowballs.set(index, Snapshot.SnowballOwner, owner);
+        snowballs.set(index, Snapshot.SnowballX, x);
+    }
+
+    /** @return a copy of the frame {@code snapshot} was written to. */
+    private static ByteBuffer encode(Snapshot snapshot, Snapshot baseline) throws IOException {
+        ByteBuffer frame = snapshot.writeTo(new FrameWriter().begin((byte) 1), baseline).finish();
+        return ByteBuffer.allocate(frame.remaining()).put(frame).flip();
+    }
+
+    private static MessageReader read(ByteBuffer frame) throws IOException {
+        return new MessageReader().wrapFrame(frame.duplicate());
+    }
+
+    private static void assertSnapshotsEqual(Snapshot expected, Snapshot actual) {
+        assertEquals(expected.sequence(), actual.sequence());
+        assertEquals(expected.tick(), actual.tick());
+        assertTablesEqual(expected.players(), actual.players(), 6);
+        assertTablesEqual(expected.snowballs(), actual.snowballs(), 4);
+    }
+
+    private static void assertTablesEqual(EntityTable expected, EntityTable actual, int fields) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.id(i), actual.id(i));
+            for (int field = 0; field < fields; field++) {
+                assertEquals(expected.get(i, field), actual.get(i, field), "field " + field + " of " + expected.id(i));
+            }
+        }
+    }
+}
@@ -2,13 +2,11 @@ package game;
 
 import tech.fastj.engine.FastJEngine;
 import tech.fastj.logging.Log;
-import tech.fastj.math.Pointf;
 import tech.fastj.graphics.dialog.DialogConfig;
 import tech.fastj.graphics.display.FastJCanvas;
 import tech.fastj.graphics.display.RenderSettings;
 import tech.fastj.graphics.display.SimpleDisplay;
 
-import tech.fastj.input.keyboard.Keys;
 import tech.fastj.systems.control.SceneManager;
 
 import javax.imageio.ImageIO;
@@ -16,8 +14,15 @@ import javax.swing.SwingUtilities;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 
+import core.message.DeathMessage;
+import core.message.HitMessage;
+import core.message.PlayerMessage;
+import core.message.Snapshot;
+import core.message.SnapshotAckMessage;
+import core.message.SnapshotHistory;
 import core.util.Networking;
 import network.client.Client;
+import network.message.Delivery;
 import scenes.GameScene;
 import scenes.MainMenu;
 import scenes.Settings;
@@ -66,6 +71,12 @@ public class GameManager extends SceneManager {
         super.update(canvas);
         if (client != null && client.isConnectionClosed()) {
             FastJEngine.runAfterUpdate(FastJEngine::closeGame);
+        } else if (client != null) {
+            try {
+                client.flushNow();
+            } catch (IOException exception) {
+                Log.warn(GameManager.class, "Couldn't flush messages to the server: {}", exception.getMessage());
+            }
         }
     }
 
@@ -86,10 +97,21 @@ public class GameManager extends SceneManager {
         this.client = client;
     }
 
+    /** Leaves the server on purpose, so {@link #update(FastJCanvas)} doesn't take the closed connection for a lost one. */
+    public void leaveServer() {
+        FastJEngine.runAfterUpdate(() -> {
+            if (client != null) {
+                Client leftClient = client;
+                client = null;
+                leftClient.shutdown();
+            }
+        });
+    }
+
     public void initClient(int playerNumber) {
         client.addServerAction(Networking.Client.AddPlayer, client -> {
             try {
-                int newPlayerNumber = client.in().readInt();
+                int newPlayerNumber = PlayerMessage.read(client.in()).player();
                 Log.debug(GameManager.class, "Adding other player {}", newPlayerNumber);
 
                 GameScene gameScene = getScene(SceneNames.GameScene);
@@ -101,7 +123,7 @@ public class GameManager extends SceneManager {
         });
         client.addServerAction(Networking.Client.RemovePlayer, client -> {
             try {
-                int removedPlayerNumber = client.in().readInt();
+                int removedPlayerNumber = PlayerMessage.read(client.in()).player();
                 Log.debug(GameManager.class, "Removing other player {}", removedPlayerNumber);
 
                 GameScene gameScene = getScene(SceneNames.GameScene);
@@ -111,79 +133,42 @@ public class GameManager extends SceneManager {
                 Scenes.switchScene(SceneNames.MainMenu, true);
             }
         });
-        client.addServerAction(Networking.Client.PlayerSyncTransform, client -> {
-            try {
-                int syncPlayerNumber = client.in().readInt();
-                float translationX = client.in().readFloat();
-                float translationY = client.in().readFloat();
-                float rotation = client.in().readFloat();
-                Log.debug(GameManager.class, "Syncing player {} to {} {} {}", syncPlayerNumber, translationX, translationY, rotation);
-
-                GameScene gameScene = getScene(SceneNames.GameScene);
-                gameScene.syncOtherPlayer(syncPlayerNumber, translationX, translationY, rotation);
-            } catch (IOException exception) {
-                ClientMain.displayException("Couldn't receive SyncPlayer data", exception);
-                Scenes.switchScene(SceneNames.MainMenu, true);
-            }
-        });
-        client.addServerAction(Networking.Client.PlayerKeyPress, client -> {
-            String key = "";
+        SnapshotHistory snapshots = new SnapshotHistory();
+        client.addServerAction(Networking.Client.WorldSnapshot, Delivery.Unreliable, client -> {
             try {
-                int player = client.in().readInt();
-                key = client.in().readUTF();
-                Keys keyPressed = Keys.valueOf(key);
-                Log.debug(GameManager.class, "player {} pressed {}", player, keyPressed.name());
-
-                GameScene gameScene = getScene(SceneNames.GameScene);
-                gameScene.transformOtherPlayer(player, keyPressed, true);
-            } catch (IOException exception) {
-                ClientMain.displayException("Couldn't receive PlayerKeyPress data", exception);
-                Scenes.switchScene(SceneNames.MainMenu, true);
-            } catch (IllegalArgumentException exception) {
-                Log.warn(GameManager.class, "Invalid identifier press {} from player {}", key, playerNumber);
-            }
-        });
-        client.addServerAction(Networking.Client.PlayerKeyRelease, client -> {
-            String key = "";
-            try {
-                int player = client.in().readInt();
-                key = client.in().readUTF();
-                Keys keyReleased = Keys.valueOf(key);
-                Log.debug(GameManager.class, "player {} released {}", player, keyReleased.name());
+                Snapshot snapshot = snapshots.read(client.in());
+                if (snapshot == null) {
+                    return;
+                }
+                client.send(new SnapshotAckMessage(snapshot.sequence()).writeTo(client.message(Networking.Server.SnapshotAck)));
+                Log.trace(GameManager.class, "Applying snapshot {} from tick {}", snapshot.sequence(), snapshot.tick());
 
                 GameScene gameScene = getScene(SceneNames.GameScene);
-                gameScene.transformOtherPlayer(player, keyReleased, false);
+                gameScene.applySnapshot(snapshot);
             } catch (IOException exception) {
-                ClientMain.displayException("Couldn't receive PlayerKeyRelease data", exception);
+                ClientMain.displayException("Couldn't receive WorldSnapshot data", exception);
                 Scenes.switchScene(SceneNames.MainMenu, true);
-            } catch (IllegalArgumentException exception) {
-                Log.warn(GameManager.class, "Invalid identifier release {} from player {}", key, playerNumber);
             }
         });
-        client.addServerAction(Networking.Client.PlayerCreateSnowball, client -> {
+        client.addServerAction(Networking.Client.PlayerHit, Delivery.ReliableUnordered, client -> {
             try {
-                int player = client.in().readInt();
-                float trajectoryX = client.in().readFloat();
-                float trajectoryY = client.in().readFloat();
-                float rotation = client.in().readFloat();
-                Pointf trajectory = new Pointf(trajectoryX, trajectoryY);
-                Log.debug(GameManager.class, "player {} spawned a snowball headed to {} with rotation {}", player, trajectory, rotation);
+                HitMessage hit = HitMessage.read(client.in());
+                Log.debug(GameManager.class, "Snowball {} from player {} hit player {}", hit.snowball(), hit.thrower(), hit.player());
 
                 GameScene gameScene = getScene(SceneNames.GameScene);
-                gameScene.spawnSnowball(player, trajectory, rotation);
+                gameScene.snowballHit(hit.snowball(), hit.player(), hit.thrower());
             } catch (IOException exception) {
-                ClientMain.displayException("Couldn't receive PlayerCreateSnowball data", exception);
+                ClientMain.displayException("Couldn't receive PlayerHit data", exception);
                 Scenes.switchScene(SceneNames.MainMenu, true);
             }
         });
         client.addServerAction(Networking.Client.PlayerTemperatureDeath, client -> {
             try {
-                int player = client.in().readInt();
-                int otherPlayer = client.in().readInt();
-                if (otherPlayer == Integer.MIN_VALUE) {
-                    Log.info("Player {} was killed by getting too cold.", player);
+                DeathMessage death = DeathMessage.read(client.in());
+                if (death.killer() == DeathMessage.NoKiller) {
+                    Log.info("Player {} was killed by getting too cold.", death.player());
                 } else {
-                    Log.info("Player {} was snowballed by player {}", player, otherPlayer);
+                    Log.info("Player {} was snowballed by player {}", death.player(), death.killer());
                 }
             } catch (IOException exception) {
                 ClientMain.displayException("Couldn't receive PlayerTemperatureDeath data", exception);
@@ -192,9 +177,8 @@ public class GameManager extends SceneManager {
         });
         client.addServerAction(Networking.Client.PlayerHitDamageDeath, client -> {
             try {
-                int player = client.in().readInt();
-                int otherPlayer = client.in().readInt();
-                Log.info("Player {} was snowballed by player {}", player, otherPlayer);
+                DeathMessage death = DeathMessage.read(client.in());
+                Log.info("Player {} was snowballed by player {}", death.player(), death.killer());
             } catch (IOException exception) {
                 ClientMain.displayException("Couldn't receive PlayerHitDamageDeath data", exception);
                 Scenes.switchScene(SceneNames.MainMenu, true);
@@ -202,7 +186,7 @@ public class GameManager extends SceneManager {
         });
         client.addServerAction(Networking.Client.PlayerWins, client -> {
             try {
-                int player = client.in().readInt();
+                int player = PlayerMessage.read(client.in()).player();
                 Log.info("we need to show player message dialog");
                 SwingUtilities.invokeLater(() -> {
                     Dialogs.message(DialogConfig.create().withTitle(player == playerNumber ? "Win" : "Loss")
@@ -210,6 +194,8 @@ public class GameManager extends SceneManager {
                             .withParentComponent(FastJEngine.<SimpleDisplay>getDisplay().getWindow())
                             .build()
                     );
+                    // the server keeps the connection open until the win is shown, then the client leaves by itself.
+                    leaveServer();
                     Scenes.switchScene(SceneNames.MainMenu, true);
                 });
             } catch (IOException exception) {
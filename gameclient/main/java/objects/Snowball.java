@@ -4,7 +4,6 @@ import tech.fastj.engine.FastJEngine;
 import tech.fastj.logging.Log;
 import tech.fastj.math.Maths;
 import tech.fastj.math.Pointf;
-import tech.fastj.graphics.Drawable;
 import tech.fastj.graphics.game.GameObject;
 import tech.fastj.graphics.game.Model2D;
 
@@ -16,17 +15,14 @@ import tech.fastj.systems.control.SimpleManager;
 import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
 
+import core.util.Movement;
 import scenes.GameScene;
 import util.FilePaths;
-import util.Tags;
 
 public class Snowball extends GameObject implements Behavior {
 
     public static final int SnowballTempDamage = 10;
     public static final int SnowballHitDamage = 15;
-    private static final float MinDistance = 700f;
-    private static final float MaxDistance = 1000f;
-    private static final float TravelSpeed = 25f;
 
     private final GameScene scene;
     private final Pointf travelMovement;
@@ -36,16 +32,20 @@ public class Snowball extends GameObject implements Behavior {
     private float life;
 
     public Snowball(Pointf trajectory, float rotation, Player player, GameScene scene) {
+        this(player.getCenter(), trajectory, rotation, player.getPlayerNumber(), scene);
+    }
+
+    public Snowball(Pointf position, Pointf trajectory, float rotation, int playerNumber, GameScene scene) {
         snowballModel = Model2D.fromPolygons(ModelUtil.loadModel(FilePaths.Snowball));
 
-        this.life = Maths.random(MinDistance, MaxDistance);
-        this.travelMovement = trajectory.multiply(TravelSpeed);
-        this.playerNumber = player.getPlayerNumber();
+        this.life = Maths.random(Movement.SnowballMinDistance, Movement.SnowballMaxDistance);
+        this.travelMovement = trajectory.multiply(Movement.SnowballSpeed);
+        this.playerNumber = playerNumber;
 
         this.scene = scene;
         super.setCollisionPath(snowballModel.getCollisionPath());
         rotate(rotation);
-        translate(player.getCenter());
+        translate(position);
         Log.debug("Created snowball moving at a trajectory of {} with life starting at {}", trajectory, life);
     }
 
@@ -59,26 +59,22 @@ public class Snowball extends GameObject implements Behavior {
             return;
         }
 
+        // hits are decided by the server, which sends them with Networking.Client.PlayerHit.
         translate(travelMovement);
-
-        Drawable player = scene.getAllWithTag(Tags.LocalPlayer).get(0);
-        if (player instanceof Player localPlayer && playerNumber != localPlayer.getPlayerNumber()) {
-            if (localPlayer.collidesWith(this)) {
-                FastJEngine.runAfterUpdate(() -> this.destroy(scene));
-                if (scene.isPlayerDead()) {
-                    return;
-                }
-                Log.info(Snowball.class, "Snowball from player {} hit player {}", playerNumber, scene.getLocalPlayerNumber());
-                scene.playerTakeSnowballDamage(playerNumber);
-            }
-        }
-
         life -= Math.abs(travelMovement.x) + Math.abs(travelMovement.y);
         if (life <= 0f) {
             FastJEngine.runAfterUpdate(() -> destroy(scene));
         }
     }
 
+    public int getPlayerNumber() {
+        return playerNumber;
+    }
+
+    public boolean isAlive() {
+        return life > 0f;
+    }
+
     @Override
     public void render(Graphics2D g) {
         if (!shouldRender()) {
@@ -3,13 +3,11 @@ package scenes;
 import tech.fastj.engine.FastJEngine;
 import tech.fastj.logging.Log;
 import tech.fastj.math.Pointf;
-import tech.fastj.math.Transform2D;
 import tech.fastj.graphics.dialog.DialogConfig;
 import tech.fastj.graphics.display.FastJCanvas;
 import tech.fastj.graphics.game.Polygon2D;
 import tech.fastj.graphics.util.DrawUtil;
 
-import tech.fastj.input.keyboard.Keys;
 import tech.fastj.resources.models.ModelUtil;
 import tech.fastj.systems.control.Scene;
 
@@ -18,11 +16,14 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
+import core.message.DeathMessage;
+import core.message.EntityTable;
+import core.message.Snapshot;
+import core.message.TransformMessage;
+import core.util.Movement;
 import core.util.Networking;
 import game.ClientMain;
 import game.GameManager;
@@ -36,16 +37,19 @@ import ui.PercentageBox;
 import ui.StatusBox;
 import util.Dialogs;
 import util.FilePaths;
+import util.InterpolationBuffer;
 import util.Fonts;
 import util.SceneNames;
 import util.Scenes;
 import util.Tags;
 
-import static scripts.PlayerController.MovementSpeed;
-import static scripts.PlayerController.RotationSpeed;
-
 public class GameScene extends Scene implements FocusListener {
 
+    private static final long NanosPerTick = 1_000_000_000L / Networking.TickRate;
+    /** Other players are shown this far behind the server, so there's still a snapshot to move towards if one is lost. */
+    private static final long InterpolationDelayNanos = 2 * 1_000_000_000L / Networking.SnapshotRate;
+    private static final long ServerClockResetNanos = 500_000_000L;
+
     private Player player;
     private PlayerController playerController;
     private SnowballController snowballController;
@@ -55,8 +59,11 @@ public class GameScene extends Scene implements FocusListener {
     private boolean isDead;
 
     private final Map<Integer, Player> otherPlayers = new HashMap<>();
-    private final Map<Integer, Transform2D> otherPlayerTransforms = new HashMap<>();
-    private ScheduledExecutorService transformSync;
+    private final Map<Integer, InterpolationBuffer> otherPlayerPositions = new HashMap<>();
+    private final Map<Integer, Snowball> otherSnowballs = new HashMap<>();
+    private volatile int viewedSnapshot = Snapshot.NoSequence;
+    private long serverClockOffset;
+    private boolean hasServerClock;
 
     private PercentageBox<Integer> temperaturePercentageBox, hitDamagePercentageBox, snowballPercentageBox;
     private StatusBox snowballThrowStatusBox, snowballMakeStatusBox;
@@ -118,20 +125,19 @@ public class GameScene extends Scene implements FocusListener {
         snowballThrowStatusBox.translate(Pointf.down().multiply(140f));
         drawableManager.addUIElement(snowballThrowStatusBox);
 
-        transformSync = Executors.newScheduledThreadPool(1);
-        transformSync.scheduleWithFixedDelay(this::sendTransformSync, 1, 1, TimeUnit.SECONDS);
+        // the server places the player where it spawned, and moves it by its inputs from then on.
+        sendTransformSync();
     }
 
     private synchronized void sendTransformSync() {
         Client client = FastJEngine.<GameManager>getLogicManager().getClient();
         try {
-            client.send(
-                    Networking.Server.SyncTransform,
-                    localPlayerNumber,
+            TransformMessage transform = new TransformMessage(
                     player.getTranslation().x,
                     player.getTranslation().y,
                     player.getRotation()
             );
+            client.send(transform.writeTo(client.message(Networking.Server.SyncTransform)));
         } catch (IOException exception) {
             if (client.isConnectionClosed()) {
                 Dialogs.message(DialogConfig.create().withTitle("Server Closed")
@@ -146,12 +152,6 @@ public class GameScene extends Scene implements FocusListener {
         }
     }
 
-    public void syncOtherPlayer(int otherPlayerNumber, float translationX, float translationY, float rotation) {
-        Player otherPlayer = otherPlayers.get(otherPlayerNumber);
-        otherPlayer.setTranslation(new Pointf(translationX, translationY));
-        otherPlayer.setRotation(rotation);
-    }
-
     @Override
     public void unload(FastJCanvas canvas) {
         player = null;
@@ -164,26 +164,31 @@ public class GameScene extends Scene implements FocusListener {
         hitDamageBar = null;
         localPlayerNumber = -1;
         otherPlayers.clear();
-        otherPlayerTransforms.clear();
+        otherPlayerPositions.clear();
+        hasServerClock = false;
+        otherSnowballs.clear();
+        viewedSnapshot = Snapshot.NoSequence;
 
-        if (transformSync != null) {
-            transformSync.shutdownNow();
-        }
-        transformSync = null;
         canvas.getRawCanvas().removeFocusListener(this);
     }
 
     @Override
-    public void update(FastJCanvas canvas) {
-        for (Map.Entry<Integer, Transform2D> otherPlayerTransform : otherPlayerTransforms.entrySet()) {
-            Player player = otherPlayers.get(otherPlayerTransform.getKey());
-            if (player == null) {
+    public synchronized void update(FastJCanvas canvas) {
+        if (!hasServerClock) {
+            return;
+        }
+
+        long renderTime = System.nanoTime() - serverClockOffset - InterpolationDelayNanos;
+        for (Map.Entry<Integer, InterpolationBuffer> otherPlayerPosition : otherPlayerPositions.entrySet()) {
+            Player otherPlayer = otherPlayers.get(otherPlayerPosition.getKey());
+            InterpolationBuffer positions = otherPlayerPosition.getValue();
+            if (otherPlayer == null || positions.isEmpty()) {
                 continue;
             }
 
-            Pointf movement = otherPlayerTransform.getValue().getTranslation();
-            float rotation = otherPlayerTransform.getValue().getRotation();
-            PlayerController.transformPlayer(movement, rotation, player);
+            positions.sample(renderTime);
+            otherPlayer.setTranslation(new Pointf(positions.x(), positions.y()));
+            otherPlayer.setRotation(positions.rotation());
         }
     }
 
@@ -211,35 +216,12 @@ public class GameScene extends Scene implements FocusListener {
         newPlayer.translate(canvasCenter);
         drawableManager.addGameObject(newPlayer);
         otherPlayers.put(newPlayerNumber, newPlayer);
-        otherPlayerTransforms.put(newPlayerNumber, new Transform2D());
-    }
-
-    public synchronized void transformOtherPlayer(int otherPlayerNumber, Keys key, boolean isPressed) {
-        if (!otherPlayers.containsKey(otherPlayerNumber)) {
-            Log.info("Didn't find player {}", otherPlayerNumber);
-            return;
-        }
-
-        Pointf movement = Pointf.origin();
-        float rotation = 0;
-
-        switch (key) {
-            case W -> movement.y -= (isPressed) ? MovementSpeed : -MovementSpeed;
-            case A -> rotation -= (isPressed) ? RotationSpeed : -RotationSpeed;
-            case S -> movement.y += (isPressed) ? MovementSpeed : -MovementSpeed;
-            case D -> rotation += (isPressed) ? RotationSpeed : -RotationSpeed;
-            default -> throw new IllegalArgumentException("Invalid key: " + key);
-        }
-
-        Transform2D otherPlayerTransform = otherPlayerTransforms.get(otherPlayerNumber);
-        otherPlayerTransform.rotate(rotation, player.getCenter());
-        otherPlayerTransform.translate(movement);
     }
 
     public void removePlayer(int removedPlayerNumber) {
         Player removedPlayer = otherPlayers.remove(removedPlayerNumber);
         drawableManager.removeGameObject(removedPlayer.getID());
-        otherPlayerTransforms.remove(removedPlayerNumber);
+        otherPlayerPositions.remove(removedPlayerNumber);
     }
 
     @Override
@@ -260,21 +242,143 @@ public class GameScene extends Scene implements FocusListener {
         return isDead;
     }
 
-    public void spawnSnowball(int otherPlayerNumber, Pointf trajectory, float rotation) {
-        Player otherPlayer = otherPlayers.get(otherPlayerNumber);
-        if (otherPlayer == null) {
-            Log.info("Didn't find player {}", otherPlayerNumber);
+    /**
+     * Applies the other players and snowballs in {@code snapshot}, which only holds those near the local player. Other
+     * players' positions are buffered, to be shown {@link #InterpolationDelayNanos} later, and players missing from the
+     * snapshot are hidden until they're back. The local player is handed to its controller to reconcile.
+     */
+    public synchronized void applySnapshot(Snapshot snapshot) {
+        long snapshotTime = snapshot.tick() * NanosPerTick;
+        syncServerClock(snapshotTime);
+
+        EntityTable players = snapshot.players();
+        for (int i = 0; i < players.size(); i++) {
+            int otherPlayerNumber = players.id(i);
+            if (otherPlayerNumber == localPlayerNumber && playerController != null) {
+                playerController.reconcile(
+                        snapshot.tick(),
+                        players.get(i, Snapshot.PlayerInputSequence),
+                        snapshot.tickNear(players.get(i, Snapshot.PlayerInputTick)),
+                        TransformMessage.X.dequantize(players.get(i, Snapshot.PlayerX)),
+                        TransformMessage.Y.dequantize(players.get(i, Snapshot.PlayerY)),
+                        TransformMessage.Rotation.dequantize(players.get(i, Snapshot.PlayerRotation))
+                );
+                continue;
+            }
+            Player otherPlayer = otherPlayers.get(otherPlayerNumber);
+            if (otherPlayer == null) {
+                continue;
+            }
+
+            otherPlayerPositions.computeIfAbsent(otherPlayerNumber, number -> {
+                otherPlayer.setShouldRender(true);
+                return new InterpolationBuffer();
+            }).add(
+                    snapshotTime,
+                    TransformMessage.X.dequantize(players.get(i, Snapshot.PlayerX)),
+                    TransformMessage.Y.dequantize(players.get(i, Snapshot.PlayerY)),
+                    TransformMessage.Rotation.dequantize(players.get(i, Snapshot.PlayerRotation))
+            );
+        }
+
+        // players too far away are left out of snapshots until they come back into range.
+        Iterator<Map.Entry<Integer, InterpolationBuffer>> otherPlayerPosition = otherPlayerPositions.entrySet().iterator();
+        while (otherPlayerPosition.hasNext()) {
+            int otherPlayerNumber = otherPlayerPosition.next().getKey();
+            if (players.indexOf(otherPlayerNumber) >= 0) {
+                continue;
+            }
+
+            otherPlayerPosition.remove();
+            Player otherPlayer = otherPlayers.get(otherPlayerNumber);
+            if (otherPlayer != null) {
+                otherPlayer.setShouldRender(false);
+            }
+        }
+
+        EntityTable snowballs = snapshot.snowballs();
+        for (int i = 0; i < snowballs.size(); i++) {
+            int snowballId = snowballs.id(i);
+            int otherPlayerNumber = snowballs.get(i, Snapshot.SnowballOwner);
+            if (otherPlayerNumber == localPlayerNumber || otherSnowballs.containsKey(snowballId)) {
+                continue;
+            }
+
+            Pointf position = new Pointf(
+                    TransformMessage.X.dequantize(snowballs.get(i, Snapshot.SnowballX)),
+                    TransformMessage.Y.dequantize(snowballs.get(i, Snapshot.SnowballY))
+            );
+            float rotation = TransformMessage.Rotation.dequantize(snowballs.get(i, Snapshot.SnowballRotation));
+            Snowball snowball = new Snowball(position, new Pointf(Movement.forwardX(rotation), Movement.forwardY(rotation)), rotation, otherPlayerNumber, this);
+            otherSnowballs.put(snowballId, snowball);
+            addSnowball(snowball);
+        }
+
+        Iterator<Map.Entry<Integer, Snowball>> otherSnowball = otherSnowballs.entrySet().iterator();
+        while (otherSnowball.hasNext()) {
+            Map.Entry<Integer, Snowball> entry = otherSnowball.next();
+            if (snowballs.indexOf(entry.getKey()) >= 0) {
+                continue;
+            }
+
+            Snowball snowball = entry.getValue();
+            otherSnowball.remove();
+            FastJEngine.runAfterUpdate(() -> {
+                if (snowball.isAlive()) {
+                    snowball.destroy(this);
+                }
+            });
+        }
+
+        viewedSnapshot = snapshot.sequence();
+    }
+
+    /**
+     * Tracks how far the local clock runs ahead of the server's, averaged over snapshots so one late snapshot doesn't
+     * shift every other player. A big jump, like the server restarting, resets it.
+     */
+    private void syncServerClock(long snapshotTime) {
+        long offset = System.nanoTime() - snapshotTime;
+        if (!hasServerClock || Math.abs(offset - serverClockOffset) > ServerClockResetNanos) {
+            serverClockOffset = offset;
+            hasServerClock = true;
             return;
         }
 
-        spawnSnowball(otherPlayer, trajectory, rotation);
+        serverClockOffset += (offset - serverClockOffset) / 16;
+    }
+
+    /** @return the sequence of the snapshot the other players were last placed by. */
+    public int getViewedSnapshot() {
+        return viewedSnapshot;
+    }
+
+    /** Removes the snowball the server says hit a player, and takes the damage if the player was us. */
+    public synchronized void snowballHit(int snowballId, int hitPlayerNumber, int throwerPlayerNumber) {
+        Snowball snowball = otherSnowballs.remove(snowballId);
+        if (snowball != null) {
+            FastJEngine.runAfterUpdate(() -> {
+                if (snowball.isAlive()) {
+                    snowball.destroy(this);
+                }
+            });
+        }
+
+        if (hitPlayerNumber == localPlayerNumber) {
+            Log.info(GameScene.class, "Snowball from player {} hit player {}", throwerPlayerNumber, localPlayerNumber);
+            playerTakeSnowballDamage(throwerPlayerNumber);
+        }
     }
 
     public void spawnSnowball(Player player, Pointf trajectory, float rotation) {
         Snowball snowball = new Snowball(trajectory, rotation, player, this);
+        addSnowball(snowball);
+    }
+
+    private void addSnowball(Snowball snowball) {
         snowball.addBehavior(snowball, this);
         this.addBehaviorListener(snowball);
-        snowball.init(player);
+        snowball.init(snowball);
         drawableManager.addGameObject(snowball);
     }
 
@@ -287,11 +391,13 @@ public class GameScene extends Scene implements FocusListener {
             if (temperatureBar.modifyHealthRemaining(-Snowball.SnowballTempDamage)) {
                 Log.info("Player {} died to temp damage.", localPlayerNumber);
                 Client client = FastJEngine.<GameManager>getLogicManager().getClient();
-                client.send(Networking.Server.TemperatureDeath, localPlayerNumber, otherPlayerNumber);
+                client.send(new DeathMessage(localPlayerNumber, otherPlayerNumber).writeTo(client.message(Networking.Server.TemperatureDeath)));
+                client.flushNow();
             } else if (hitDamageBar.modifyHealthRemaining(-Snowball.SnowballHitDamage)) {
                 Log.info("Player {} died to hit damage.", localPlayerNumber);
                 Client client = FastJEngine.<GameManager>getLogicManager().getClient();
-                client.send(Networking.Server.HitDamageDeath, localPlayerNumber, otherPlayerNumber);
+                client.send(new DeathMessage(localPlayerNumber, otherPlayerNumber).writeTo(client.message(Networking.Server.HitDamageDeath)));
+                client.flushNow();
             }
         } catch (IOException exception) {
             ClientMain.displayException("Couldn't sync player death, disconnecting client", exception);
@@ -311,7 +417,8 @@ public class GameScene extends Scene implements FocusListener {
 
             Log.info("Player {} died to residual temp damage.", localPlayerNumber);
             Client client = FastJEngine.<GameManager>getLogicManager().getClient();
-            client.send(Networking.Server.TemperatureDeath, localPlayerNumber, Integer.MIN_VALUE);
+            client.send(new DeathMessage(localPlayerNumber, DeathMessage.NoKiller).writeTo(client.message(Networking.Server.TemperatureDeath)));
+            client.flushNow();
         } catch (IOException exception) {
             ClientMain.displayException("Couldn't sync player death, disconnecting client", exception);
             Scenes.switchScene(SceneNames.MainMenu, true);
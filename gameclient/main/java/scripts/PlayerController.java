@@ -2,7 +2,6 @@ package scripts;
 
 import tech.fastj.engine.FastJEngine;
 import tech.fastj.logging.Log;
-import tech.fastj.math.Maths;
 import tech.fastj.math.Pointf;
 import tech.fastj.graphics.game.GameObject;
 
@@ -18,17 +17,41 @@ import java.util.Objects;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import core.message.InputMessage;
+import core.util.Input;
+import core.util.Movement;
 import core.util.Networking;
 import network.client.Client;
 import objects.Player;
 import scenes.GameScene;
 
+/**
+ * Moves the local player as soon as its keys change, and sends the held inputs to the server. The server's own copy of
+ * the player is authoritative: when it arrives, the player is moved to it and the inputs the server hadn't applied yet
+ * are replayed on top. Small differences are eased out over a few frames instead of snapped.
+ */
 public class PlayerController implements Behavior {
 
     public static final int TempDamage = 5;
-    public static final float MovementSpeed = 5f;
-    public static final float RotationSpeed = 5f;
+
+    /** Frames of inputs kept for replaying, about two seconds' worth. */
+    private static final int FrameHistory = 128;
+    private static final float SnapDistance = 100f;
+    private static final float SnapRotation = 45f;
+    private static final float CorrectionRate = 0.15f;
+
+    private static final int[] KeyInputs = new int[Keys.values().length];
+
+    static {
+        KeyInputs[Keys.W.ordinal()] = Input.Forward;
+        KeyInputs[Keys.A.ordinal()] = Input.TurnLeft;
+        KeyInputs[Keys.S.ordinal()] = Input.Backward;
+        KeyInputs[Keys.D.ordinal()] = Input.TurnRight;
+        KeyInputs[Keys.Space.ordinal()] = Input.ThrowSnowball;
+        KeyInputs[Keys.R.ordinal()] = Input.MakeSnowball;
+    }
 
     private final InputManager inputManager;
     private final Runnable playerObserver;
@@ -38,8 +61,17 @@ public class PlayerController implements Behavior {
 
     private KeyboardActionListener keyListener;
     private MouseActionListener mouseListener;
-    private Pointf movement;
-    private float rotation;
+    private volatile int inputs;
+    private int sentInputs;
+    private int inputSequence;
+
+    private final int[] frameInputs = new int[FrameHistory];
+    private final int[] pendingSequences = new int[FrameHistory];
+    private final int[] pendingFrames = new int[FrameHistory];
+    private final AtomicReference<ServerPlayer> serverPlayer = new AtomicReference<>();
+    private int pendingStart, pendingCount;
+    private int frame;
+    private float correctionX, correctionY, correctionRotation;
 
     private ScheduledExecutorService movementChecker;
     private volatile boolean isMoving;
@@ -54,8 +86,12 @@ public class PlayerController implements Behavior {
 
     @Override
     public void init(GameObject player) {
-        movement = Pointf.origin();
-        rotation = 0f;
+        inputs = 0;
+        sentInputs = 0;
+        frame = 0;
+        pendingCount = 0;
+        serverPlayer.set(null);
+        correctionX = correctionY = correctionRotation = 0f;
         isMoving = false;
 
         keyListener = new KeyboardActionListener() {
@@ -65,10 +101,7 @@ public class PlayerController implements Behavior {
                     return;
                 }
 
-                Keys key = keyboardStateEvent.getKey();
-                if (key == Keys.W || key == Keys.A || key == Keys.S || key == Keys.D) {
-                    keyPress(key);
-                }
+                inputs |= KeyInputs[keyboardStateEvent.getKey().ordinal()];
             }
 
             @Override
@@ -77,10 +110,7 @@ public class PlayerController implements Behavior {
                     return;
                 }
 
-                Keys key = keyboardStateEvent.getKey();
-                if (key == Keys.W || key == Keys.A || key == Keys.S || key == Keys.D) {
-                    keyRelease(key);
-                }
+                inputs &= ~KeyInputs[keyboardStateEvent.getKey().ordinal()];
             }
         };
 
@@ -135,76 +165,155 @@ public class PlayerController implements Behavior {
 //        inputManager.addMouseActionListener(mouseListener);
     }
 
-    public void keyPress(Keys key) {
+    /** Sends the held inputs, at most once per update and only when they changed. */
+    private void sendInputs(int heldInputs) {
         try {
-            client.send(Networking.Server.KeyPress, playerNumber, key.name());
-            switch (key) {
-                case W -> {
-                    movement.y = 0f;
-                    movement.y -= MovementSpeed;
-                }
-                case A -> {
-                    rotation = 0f;
-                    rotation -= RotationSpeed;
-                }
-                case S -> {
-                    movement.y = 0f;
-                    movement.y += MovementSpeed;
-                }
-                case D -> {
-                    rotation = 0f;
-                    rotation += RotationSpeed;
-                }
-                default -> throw new IllegalArgumentException("Invalid key: " + key);
-            }
+            inputSequence = (inputSequence + 1) & 0xFFFF;
+            client.send(new InputMessage(inputSequence, heldInputs).writeTo(client.message(Networking.Server.Input)));
+            sentInputs = heldInputs;
+            addPending(inputSequence, frame);
         } catch (IOException exception) {
             FastJEngine.error("IO error", exception);
         }
     }
 
-    public void keyRelease(Keys key) {
-        Log.info("released " + key);
-        try {
-            client.send(Networking.Server.KeyRelease, playerNumber, key.name());
-
-            switch (key) {
-                case W -> movement.y += MovementSpeed;
-                case A -> rotation += RotationSpeed;
-                case S -> movement.y -= MovementSpeed;
-                case D -> rotation -= RotationSpeed;
-                default -> throw new IllegalArgumentException("Invalid key: " + key);
-            }
-        } catch (IOException exception) {
-            FastJEngine.error("IO error", exception);
+    /** Moves {@code player} by one tick of {@code inputs}, the same way the server does. */
+    public static boolean transformPlayer(int inputs, Player player) {
+        float speed = Movement.speedOf(inputs);
+        float turn = Movement.turnOf(inputs);
+        if (speed == 0f && turn == 0f) {
+            return false;
         }
-    }
 
-    public static boolean transformPlayer(Pointf movement, float rotation, Player player) {
-        if (!movement.equals(Pointf.origin()) || rotation != 0f) {
-            Pointf rotatedMovement = new Pointf(movement).rotate(-(player.getRotationWithin360() + rotation));
-            player.rotate(rotation);
-            player.translate(rotatedMovement);
-
-            return true;
-        }
+        float rotation = Movement.turn(player.getRotationWithin360(), turn);
+        player.rotate(turn);
+        player.translate(new Pointf(Movement.forwardX(rotation), Movement.forwardY(rotation)).multiply(speed));
+        return true;
+    }
 
-        return false;
+    /**
+     * Hands over the server's copy of the local player from a snapshot taken on server {@code tick}. It's applied on
+     * the next update.
+     *
+     * @param inputSequence the sequence of the inputs the server was holding for the player.
+     * @param inputTick     the server tick those inputs were first applied on.
+     */
+    public void reconcile(int tick, int inputSequence, int inputTick, float x, float y, float rotation) {
+        serverPlayer.set(new ServerPlayer(tick, inputSequence, inputTick, x, y, rotation));
     }
 
     @Override
     public void update(GameObject player) {
-        isMoving = transformPlayer(movement, rotation, (Player) player);
+        frame++;
+        int heldInputs = inputs;
+        if (heldInputs != sentInputs) {
+            sendInputs(heldInputs);
+        }
+        frameInputs[frame % FrameHistory] = heldInputs;
+
+        isMoving = transformPlayer(heldInputs, (Player) player);
+
+        ServerPlayer latestServerPlayer = serverPlayer.getAndSet(null);
+        if (latestServerPlayer != null) {
+            reconcile((Player) player, latestServerPlayer);
+        }
+        applyCorrection((Player) player);
+
         if (isMoving) {
             playerObserver.run();
         }
     }
 
-    public Pointf movement() {
-        return movement;
+    private void reconcile(Player player, ServerPlayer serverPlayer) {
+        int sentFrame = acknowledge(serverPlayer.inputSequence);
+        if (sentFrame < 0) {
+            return;
+        }
+
+        // the server held the inputs for (tick - inputTick + 1) ticks, as we did from the frame we sent them on.
+        int serverFrame = Math.min(sentFrame + (serverPlayer.tick - serverPlayer.inputTick), frame);
+        if (frame - serverFrame >= FrameHistory) {
+            return;
+        }
+
+        float x = serverPlayer.x;
+        float y = serverPlayer.y;
+        float rotation = serverPlayer.rotation;
+        for (int replayedFrame = serverFrame + 1; replayedFrame <= frame; replayedFrame++) {
+            int replayedInputs = frameInputs[replayedFrame % FrameHistory];
+            float speed = Movement.speedOf(replayedInputs);
+            rotation = Movement.turn(rotation, Movement.turnOf(replayedInputs));
+            x += Movement.forwardX(rotation) * speed;
+            y += Movement.forwardY(rotation) * speed;
+        }
+
+        Pointf translation = player.getTranslation();
+        float errorX = x - translation.x;
+        float errorY = y - translation.y;
+        float errorRotation = Movement.turn(rotation - player.getRotationWithin360(), 180f) - 180f;
+        if (Math.hypot(errorX, errorY) > SnapDistance || Math.abs(errorRotation) > SnapRotation) {
+            Log.debug(PlayerController.class, "Snapping player {} by {} {} {}", playerNumber, errorX, errorY, errorRotation);
+            player.setTranslation(new Pointf(x, y));
+            player.setRotation(rotation);
+            correctionX = correctionY = correctionRotation = 0f;
+            return;
+        }
+
+        correctionX = errorX;
+        correctionY = errorY;
+        correctionRotation = errorRotation;
     }
 
-    public float rotation() {
-        return rotation;
+    /** Eases out part of the remaining difference from the server each frame. */
+    private void applyCorrection(Player player) {
+        if (correctionX == 0f && correctionY == 0f && correctionRotation == 0f) {
+            return;
+        }
+
+        float stepX = correctionX * CorrectionRate;
+        float stepY = correctionY * CorrectionRate;
+        float stepRotation = correctionRotation * CorrectionRate;
+        player.translate(new Pointf(stepX, stepY));
+        player.rotate(stepRotation);
+        correctionX -= stepX;
+        correctionY -= stepY;
+        correctionRotation -= stepRotation;
+
+        if (Math.abs(correctionX) < 0.01f && Math.abs(correctionY) < 0.01f && Math.abs(correctionRotation) < 0.01f) {
+            correctionX = correctionY = correctionRotation = 0f;
+        }
+    }
+
+    private void addPending(int sequence, int sentFrame) {
+        if (pendingCount == FrameHistory) {
+            pendingStart = (pendingStart + 1) % FrameHistory;
+            pendingCount--;
+        }
+
+        int index = (pendingStart + pendingCount++) % FrameHistory;
+        pendingSequences[index] = sequence;
+        pendingFrames[index] = sentFrame;
+    }
+
+    /**
+     * Drops the inputs sent before {@code sequence}, which the server has moved past.
+     *
+     * @return the frame {@code sequence} was sent on, or -1 if it's no longer pending.
+     */
+    private int acknowledge(int sequence) {
+        for (int i = 0; i < pendingCount; i++) {
+            int index = (pendingStart + i) % FrameHistory;
+            if (pendingSequences[index] == sequence) {
+                pendingStart = index;
+                pendingCount -= i;
+                return pendingFrames[index];
+            }
+        }
+        return -1;
+    }
+
+    public int inputs() {
+        return inputs;
     }
 
     public boolean isMoving() {
@@ -221,23 +330,13 @@ public class PlayerController implements Behavior {
         inputManager.removeKeyboardActionListener(keyListener);
         keyListener = null;
         mouseListener = null;
-        movement = null;
-        rotation = 0f;
     }
 
     public void resetMovement() {
-        if (movement.y == MovementSpeed) {
-            keyRelease(Keys.S);
-        }
-        if (movement.y == -MovementSpeed) {
-            keyRelease(Keys.W);
-        }
-        if (rotation == RotationSpeed) {
-            keyRelease(Keys.D);
-        }
-        if (rotation == -RotationSpeed) {
-            keyRelease(Keys.A);
-        }
+        inputs = 0;
+    }
+
+    private record ServerPlayer(int tick, int inputSequence, int inputTick, float x, float y, float rotation) {
     }
 
     @Override
@@ -250,17 +349,16 @@ public class PlayerController implements Behavior {
         }
         PlayerController playerController = (PlayerController) other;
         return playerNumber == playerController.playerNumber
-                && Maths.floatEquals(playerController.rotation, rotation)
+                && inputs == playerController.inputs
                 && inputManager.equals(playerController.inputManager)
                 && playerObserver.equals(playerController.playerObserver)
                 && client.equals(playerController.client)
                 && Objects.equals(keyListener, playerController.keyListener)
-                && Objects.equals(mouseListener, playerController.mouseListener)
-                && Objects.equals(movement, playerController.movement);
+                && Objects.equals(mouseListener, playerController.mouseListener);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(inputManager, playerObserver, playerNumber, client, keyListener, mouseListener, movement, rotation);
+        return Objects.hash(inputManager, playerObserver, playerNumber, client, keyListener, mouseListener, inputs);
     }
 }
@@ -16,6 +16,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import core.message.SnowballMessage;
+import core.util.Movement;
 import core.util.Networking;
 import network.client.Client;
 import objects.Player;
@@ -73,8 +75,9 @@ public class SnowballController implements Behavior {
                         FastJEngine.runAfterUpdate(() -> {
                             try {
                                 float playerRotation = player.getRotationWithin360();
-                                Pointf trajectory = Pointf.up().rotate(-playerRotation);
-                                client.send(Networking.Server.CreateSnowball, player.getPlayerNumber(), trajectory.x, trajectory.y, playerRotation);
+                                Pointf trajectory = new Pointf(Movement.forwardX(playerRotation), Movement.forwardY(playerRotation));
+                                SnowballMessage snowball = new SnowballMessage(trajectory.x, trajectory.y, playerRotation, scene.getViewedSnapshot());
+                                client.send(snowball.writeTo(client.message(Networking.Server.CreateSnowball)));
                                 scene.spawnSnowball(player, trajectory, playerRotation);
                                 snowballCount--;
                                 snowballThrowCooldown();
@@ -0,0 +1,95 @@
+package util;
+
+import core.util.Movement;
+
+/**
+ * Recent positions of a remote player, stamped with the server time they were taken at. Sampling between two of them
+ * interpolates, and sampling past the newest extrapolates for a short while, so a late snapshot doesn't stop the player
+ * dead.
+ */
+public final class InterpolationBuffer {
+
+    public static final long MaxExtrapolationNanos = 250_000_000L;
+
+    private static final int Capacity = 16;
+
+    private final long[] times = new long[Capacity];
+    private final float[] xs = new float[Capacity];
+    private final float[] ys = new float[Capacity];
+    private final float[] rotations = new float[Capacity];
+    private int newest = -1;
+    private int count;
+
+    private float sampledX, sampledY, sampledRotation;
+
+    /** Adds a position taken at server time {@code time}. Positions older than the newest are ignored. */
+    public void add(long time, float x, float y, float rotation) {
+        if (count > 0 && time <= times[newest]) {
+            return;
+        }
+
+        newest = (newest + 1) % Capacity;
+        count = Math.min(count + 1, Capacity);
+        times[newest] = time;
+        xs[newest] = x;
+        ys[newest] = y;
+        rotations[newest] = rotation;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Samples the position at server time {@code time}, read with {@link #x()}, {@link #y()} and {@link #rotation()}.
+     * Does nothing if the buffer is empty.
+     */
+    public void sample(long time) {
+        if (count == 0) {
+            return;
+        }
+
+        if (count == 1 || time <= times[indexOf(count - 1)]) {
+            set(count == 1 ? newest : indexOf(count - 1));
+            return;
+        }
+
+        // the newest pair whose start is at or before the time, or the newest pair to extrapolate along.
+        int to = newest;
+        int from = indexOf(1);
+        for (int age = 1; age < count - 1 && times[from] > time; age++) {
+            to = from;
+            from = indexOf(age + 1);
+        }
+
+        long sampleTime = Math.min(time, times[newest] + MaxExtrapolationNanos);
+        float t = (float) (sampleTime - times[from]) / (times[to] - times[from]);
+        float turn = Movement.turn(rotations[to] - rotations[from], 180f) - 180f;
+        sampledX = xs[from] + (xs[to] - xs[from]) * t;
+        sampledY = ys[from] + (ys[to] - ys[from]) * t;
+        sampledRotation = Movement.turn(rotations[from], turn * t);
+    }
+
+    public float x() {
+        return sampledX;
+    }
+
+    public float y() {
+        return sampledY;
+    }
+
+    public float rotation() {
+        return sampledRotation;
+    }
+
+    /** @return the index of the sample {@code age} samples older than the newest. */
+    private int indexOf(int age) {
+        return (newest - age + Capacity) % Capacity;
+    }
+
+    private void set(int index) {
+        sampledX = xs[index];
+        sampledY = ys[index];
+        sampledRotation = rotations[index];
+    }
+}
@@ -19,12 +19,14 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import core.message.PlayerMessage;
 import core.util.FilePathUtil;
 import core.util.Networking;
 import game.ClientMain;
 import game.GameManager;
 import network.client.Client;
 import network.client.ClientConfig;
+import network.message.FlushPolicy;
 import network.security.SecureServerConfig;
 import network.security.SecureTypes;
 import scenes.GameScene;
@@ -72,7 +74,7 @@ public class Multiplayer {
 
             int playerNumber;
             try {
-                playerNumber = client.in().readInt();
+                playerNumber = PlayerMessage.read(client.awaitMessage(Networking.Client.AssignPlayer)).player();
             } catch (IOException exception) {
                 client.shutdown();
                 gameManager.setClient(null);
@@ -96,7 +98,10 @@ public class Multiplayer {
 
     private static Client setupClient(JDialog connectingDialog, String hostname) {
         try {
-            Client client = new Client(new ClientConfig(hostname, Networking.Port), new SecureServerConfig(
+            ClientConfig clientConfig = new ClientConfig(hostname, Networking.Port)
+                    .withFlushPolicy(FlushPolicy.batched(FlushPolicy.DefaultFlushThreshold))
+                    .withDatagramChannel(true);
+            Client client = new Client(clientConfig, new SecureServerConfig(
                     FilePathUtil.streamResource(FilePaths.class, FilePaths.PublicGameKey),
                     "sslpublicpassword",
                     SecureTypes.TLSv1_3
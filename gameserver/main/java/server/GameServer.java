@@ -4,24 +4,36 @@ import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicReference;
 
+import core.message.DeathMessage;
+import core.message.InputMessage;
+import core.message.SnapshotAckMessage;
+import core.message.SnowballMessage;
+import core.message.TransformMessage;
 import core.util.FilePathUtil;
 import core.util.Networking;
+import network.message.Delivery;
+import network.message.FlushPolicy;
 import network.security.SecureServerConfig;
 import network.security.SecureTypes;
 import network.server.ClientDataAction;
+import network.server.OverflowPolicy;
 import network.server.Server;
 import network.server.ServerClient;
 import network.server.ServerCommand;
 import network.server.ServerConfig;
+import network.transport.TransportType;
 import util.FilePaths;
 
 public class GameServer implements Runnable {
 
     private final Server server;
-    private final ServerState serverState;
-    private final ServerConfig serverConfig = new ServerConfig(Networking.Port);
+    private final Rooms rooms;
+    private final ServerConfig serverConfig = new ServerConfig(Networking.Port)
+            .withTransport(TransportType.Reactor)
+            .withOutboundQueue(ServerConfig.DefaultOutboundQueueCapacity, OverflowPolicy.Coalesce)
+            .withFlushPolicy(FlushPolicy.batched(FlushPolicy.DefaultFlushThreshold))
+            .withDatagramChannel(Networking.Port);
 
     public GameServer() throws IOException, GeneralSecurityException {
         SecureServerConfig secureServerConfig = new SecureServerConfig(
@@ -30,21 +42,20 @@ public class GameServer implements Runnable {
                 SecureTypes.TLSv1_3
         );
         server = new Server(serverConfig, secureServerConfig);
-        serverState = new ServerState(server, this);
+        rooms = new Rooms(server);
         setupClientActions();
     }
 
     private void setupClientActions() {
-        server.addOnClientConnect(serverState::syncAddPlayer);
-        server.addOnClientDisconnect(serverState::syncRemovePlayer);
-        server.addOnClientDisconnect((removedClient, allClients) -> serverState.checkWinCondition(allClients));
+        server.addOnClientConnect(rooms::join);
+        server.addOnClientDisconnect(rooms::leave);
         server.addServerCommand(new ServerCommand(Networking.ServerCommands.ToggleClientConnect, this::toggleClientConnect));
-        server.addClientAction(new ClientDataAction(Networking.Server.KeyPress, serverState::handleKeyPress));
-        server.addClientAction(new ClientDataAction(Networking.Server.KeyRelease, serverState::handleKeyRelease));
-        server.addClientAction(new ClientDataAction(Networking.Server.SyncTransform, serverState::syncPlayerTransform));
-        server.addClientAction(new ClientDataAction(Networking.Server.CreateSnowball, serverState::createSnowball));
-        server.addClientAction(new ClientDataAction(Networking.Server.TemperatureDeath, serverState::temperatureDeath));
-        server.addClientAction(new ClientDataAction(Networking.Server.HitDamageDeath, serverState::hitDamageDeath));
+        server.addClientAction(new ClientDataAction(Networking.Server.Input, Delivery.ReliableOrdered, rooms.route(InputMessage::read, ServerState::handleInput)));
+        server.addClientAction(new ClientDataAction(Networking.Server.SyncTransform, Delivery.ReliableOrdered, rooms.route(TransformMessage::read, ServerState::syncPlayerTransform)));
+        server.addClientAction(new ClientDataAction(Networking.Server.CreateSnowball, Delivery.ReliableUnordered, rooms.route(SnowballMessage::read, ServerState::createSnowball)));
+        server.addClientAction(new ClientDataAction(Networking.Server.TemperatureDeath, rooms.route(DeathMessage::read, ServerState::temperatureDeath)));
+        server.addClientAction(new ClientDataAction(Networking.Server.HitDamageDeath, rooms.route(DeathMessage::read, ServerState::hitDamageDeath)));
+        server.addClientAction(new ClientDataAction(Networking.Server.SnapshotAck, Delivery.Unreliable, rooms.route(SnapshotAckMessage::read, ServerState::acknowledgeSnapshot)));
     }
 
     private void toggleClientConnect(String s, Map<UUID, ServerClient> uuidServerClientMap) {
@@ -55,17 +66,9 @@ public class GameServer implements Runnable {
         }
     }
 
-    void resetServer(AtomicReference<Server> server) throws GeneralSecurityException, IOException {
-        SecureServerConfig secureServerConfig = new SecureServerConfig(
-                FilePathUtil.streamResource(FilePaths.class, FilePaths.PrivateGameKey),
-                "sslprivatepassword",
-                SecureTypes.TLSv1_3
-        );
-        server.get().reset(serverConfig, secureServerConfig);
-    }
-
     @Override
     public void run() {
         server.run();
+        rooms.start();
     }
 }
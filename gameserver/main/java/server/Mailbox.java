@@ -0,0 +1,65 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A queue any number of threads post to and a single thread drains, without locks. Posting is one atomic swap of the
+ * tail, so a posting thread never waits on the draining thread or sits behind its work.
+ * <p>
+ * Messages are linked from a stub node; the consumer owns the head and only reads links producers have finished
+ * writing. A message whose post is still between the swap and the link is picked up by the next drain.
+ */
+final class Mailbox<T> {
+
+    private final AtomicReference<Node<T>> tail;
+    /** Only touched by the draining thread. Its message has already been taken. */
+    private Node<T> head;
+
+    Mailbox() {
+        Node<T> stub = new Node<>(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    /** Adds {@code message} to the mailbox. Safe to call from any thread. */
+    void post(T message) {
+        Node<T> node = new Node<>(message);
+        Node<T> previous = tail.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * Hands the messages posted so far to {@code consumer}, in the order each thread posted them. Messages posted while
+     * draining wait for the next drain, so a busy producer can't keep the consumer here. Only call from the draining
+     * thread.
+     *
+     * @return how many messages were drained.
+     */
+    int drain(Consumer<T> consumer) {
+        Node<T> last = tail.get();
+        int drained = 0;
+        while (head != last) {
+            Node<T> next = head.next;
+            if (next == null) {
+                break;
+            }
+
+            T message = next.message;
+            next.message = null;
+            head = next;
+            drained++;
+            consumer.accept(message);
+        }
+        return drained;
+    }
+
+    private static final class Node<T> {
+        T message;
+        volatile Node<T> next;
+
+        Node(T message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package server;
+
+import tech.fastj.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import core.util.Networking;
+import network.server.Server;
+
+/**
+ * One thread that ticks the rooms given to it, each room applying its posted messages as it ticks. A room never leaves
+ * its loop, so its state is only ever touched by one thread and stays in that thread's core's cache.
+ */
+final class RoomLoop {
+
+    private final Server server;
+    private final ScheduledExecutorService executor;
+    private final Mailbox<ServerState> addedRooms = new Mailbox<>();
+    /** Only touched on the loop's thread. */
+    private final List<ServerState> rooms = new ArrayList<>();
+    /** How many rooms were given to the loop, for {@link Rooms} to balance them; only touched by {@link Rooms}. */
+    int roomCount;
+
+    RoomLoop(Server server, int index) {
+        this.server = server;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "room-loop-" + index));
+    }
+
+    void start() {
+        long tickMicros = 1_000_000L / Networking.TickRate;
+        executor.scheduleAtFixedRate(this::tick, tickMicros, tickMicros, TimeUnit.MICROSECONDS);
+    }
+
+    /** Starts ticking {@code room} from the loop's next tick on. */
+    void add(ServerState room) {
+        roomCount++;
+        addedRooms.post(room);
+    }
+
+    /** Steps every room. A room that fails is logged rather than thrown, which would cancel every later tick. */
+    private void tick() {
+        if (!server.isRunning()) {
+            executor.shutdown();
+            return;
+        }
+
+        addedRooms.drain(rooms::add);
+        for (ServerState room : rooms) {
+            try {
+                room.tick();
+            } catch (RuntimeException exception) {
+                Log.error(this.getClass(), "Room tick failed", exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package server;
+
+import tech.fastj.logging.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import network.message.MessageReader;
+import network.server.Server;
+import network.server.ServerClient;
+
+/**
+ * Every match the server is running, each a {@link ServerState} of its own. Clients are put in a room when they
+ * connect, and everything they send is handed to that room until they leave. Rooms are kept once they empty out, to be
+ * reused by the next match.
+ * <p>
+ * Each room runs on one of a fixed set of {@link RoomLoop}s, one per core. Messages are read on the thread that
+ * received them, then posted to their room, so a room's state is never shared between threads. Messages that can't be
+ * read are posted too, so removing their client happens on the room's loop like any other leave.
+ */
+final class Rooms {
+
+    static final int MaxPlayersPerRoom = 8;
+
+    private final Server server;
+    private final RoomLoop[] loops;
+    private final List<Room> rooms = new ArrayList<>();
+    private final Map<UUID, Room> roomsByClient = new ConcurrentHashMap<>();
+
+    Rooms(Server server) {
+        this.server = server;
+        loops = new RoomLoop[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new RoomLoop(server, i);
+        }
+    }
+
+    void start() {
+        for (RoomLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    /** Puts {@code client} in the fullest room with space left, so matches fill up before new ones start. */
+    synchronized void join(ServerClient client, Map<UUID, ServerClient> allClients) {
+        Room room = null;
+        for (Room candidate : rooms) {
+            if (candidate.clientCount < MaxPlayersPerRoom && (room == null || candidate.clientCount > room.clientCount)) {
+                room = candidate;
+            }
+        }
+        if (room == null) {
+            room = openRoom();
+        }
+
+        room.clientCount++;
+        roomsByClient.put(client.getId(), room);
+        room.state.post(state -> state.syncAddPlayer(client, allClients));
+    }
+
+    synchronized void leave(ServerClient client, Map<UUID, ServerClient> allClients) {
+        Room room = roomsByClient.remove(client.getId());
+        if (room == null) {
+            return;
+        }
+
+        room.clientCount--;
+        room.state.post(state -> {
+            state.syncRemovePlayer(client, allClients);
+            state.checkWinCondition();
+        });
+    }
+
+    /**
+     * Takes the players of {@code state}'s finished match out of its room, so the room fills up again for the next
+     * match. Their messages are dropped until they leave. Called on the room's loop.
+     */
+    synchronized void endMatch(ServerState state, Collection<ServerClient> players) {
+        for (ServerClient player : players) {
+            Room room = roomsByClient.get(player.getId());
+            if (room != null && room.state == state) {
+                roomsByClient.remove(player.getId());
+                room.clientCount--;
+            }
+        }
+    }
+
+    /**
+     * @return a client data action that reads each message with {@code reader}, then posts it to {@code action} in the
+     * sending client's room.
+     */
+    <T> BiConsumer<ServerClient, Map<UUID, ServerClient>> route(Reader<T> reader, RoomAction<T> action) {
+        return (client, allClients) -> {
+            Room room = roomsByClient.get(client.getId());
+            if (room == null) {
+                // clients leaving, or whose match just ended, have no room.
+                Log.debug(this.getClass(), "Dropping message from client {}, which is not in a room.", client.getId());
+                return;
+            }
+
+            T message;
+            try {
+                message = reader.read(client.in());
+            } catch (IOException exception) {
+                room.state.post(state -> state.readFailed(client, exception));
+                return;
+            }
+
+            room.state.post(state -> action.accept(state, client, message));
+        };
+    }
+
+    /** Opens a room on the loop running the fewest rooms. */
+    private Room openRoom() {
+        RoomLoop loop = loops[0];
+        for (RoomLoop candidate : loops) {
+            if (candidate.roomCount < loop.roomCount) {
+                loop = candidate;
+            }
+        }
+
+        Room room = new Room(new ServerState(server, this));
+        loop.add(room.state);
+        rooms.add(room);
+        Log.info(this.getClass(), "Opened room {}", rooms.size());
+        return room;
+    }
+
+    /** A room, and how many clients were routed to it. */
+    private static class Room {
+        final ServerState state;
+        int clientCount;
+
+        Room(ServerState state) {
+            this.state = state;
+        }
+    }
+
+    @FunctionalInterface
+    interface Reader<T> {
+        T read(MessageReader message) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface RoomAction<T> {
+        void accept(ServerState room, ServerClient client, T message);
+    }
+}
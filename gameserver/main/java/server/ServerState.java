@@ -2,75 +2,85 @@ package server;
 
 import tech.fastj.logging.Log;
 
-import tech.fastj.input.keyboard.Keys;
-
 import java.io.IOException;
-import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
-
+import java.util.function.Consumer;
+
+import core.message.DeathMessage;
+import core.message.InputMessage;
+import core.message.PlayerMessage;
+import core.message.SnapshotAckMessage;
+import core.message.SnowballMessage;
+import core.message.TransformMessage;
+import core.util.Input;
 import core.util.Networking;
+import network.message.Frame;
 import network.server.Server;
 import network.server.ServerClient;
 
+/**
+ * One match, with its own players, world and win condition. The server can run many at once, as {@link Rooms}; messages
+ * and broadcasts only ever reach the players in the same room.
+ * <p>
+ * Threads that receive messages don't touch a room's state. They {@link #post(Consumer)} the decoded messages to the
+ * room's {@link Mailbox}, which the room's {@link RoomLoop} drains at the start of each tick, so every change to the
+ * room happens on that one thread and no reader waits on game logic.
+ */
 public class ServerState {
 
     private final Map<UUID, Integer> idToPlayers = new HashMap<>();
     private final Map<Integer, ServerClient> players = new HashMap<>();
     private final Map<Integer, AtomicBoolean> alivePlayers = new HashMap<>();
+    private final WorldState world = new WorldState();
+    private final Mailbox<Consumer<ServerState>> mailbox = new Mailbox<>();
     private boolean isMatchRunning = false;
     private final Server server;
-    private final GameServer gameServer;
+    private final Rooms rooms;
 
     private int newPlayerIncrement = 1;
 
-    public ServerState(Server server, GameServer gameServer) {
+    ServerState(Server server, Rooms rooms) {
         this.server = server;
-        this.gameServer = gameServer;
+        this.rooms = rooms;
+    }
+
+    /** Queues {@code event} to run against this room at the start of its next tick. Safe to call from any thread. */
+    void post(Consumer<ServerState> event) {
+        mailbox.post(event);
     }
 
     void syncAddPlayer(ServerClient addedClient, Map<UUID, ServerClient> allClients) {
         try {
             int playerNumber = newPlayerIncrement++;
-            addedClient.out().writeInt(playerNumber);
-            addedClient.out().flush();
+            addedClient.send(new PlayerMessage(playerNumber).writeTo(addedClient.message(Networking.Client.AssignPlayer)));
             Log.info(this.getClass(), "client {} set to player {}", addedClient.getId(), playerNumber);
 
             idToPlayers.put(addedClient.getId(), playerNumber);
             players.put(playerNumber, addedClient);
             alivePlayers.put(playerNumber, new AtomicBoolean(true));
+            world.addPlayer(addedClient, playerNumber);
 
             // add new player to other clients
-            for (ServerClient serverClient : allClients.values()) {
-                if (serverClient == addedClient) {
-                    continue;
-                }
-                Log.debug(this.getClass(), "sending player {} to {}", playerNumber, serverClient.getId());
-
-                try {
-                    serverClient.send(Networking.Client.AddPlayer, playerNumber);
-                } catch (IOException exception) {
-                    if (tryRemoveClosedClient(serverClient, addedClient)) {
-                        Log.error(this.getClass(), "Server IO error", exception);
-                    }
-                    if (addedClient.isConnectionClosed() || !server.getClients().containsValue(addedClient)) {
-                        return;
-                    }
-                }
+            Log.debug(this.getClass(), "sending player {} to other clients", playerNumber);
+            broadcastExcept(new PlayerMessage(playerNumber).writeTo(server.message(Networking.Client.AddPlayer)).toFrame(), addedClient);
+            if (addedClient.isConnectionClosed()) {
+                return;
             }
 
             // add other clients to new player
-            for (Map.Entry<UUID, ServerClient> player : server.getClients().entrySet()) {
+            for (Map.Entry<Integer, ServerClient> player : players.entrySet()) {
                 if (player.getValue() == addedClient) {
                     continue;
                 }
-                Log.debug(this.getClass(), "sending player {} to {}", idToPlayers.get(player.getKey()), addedClient.getId());
+                Log.debug(this.getClass(), "sending player {} to {}", player.getKey(), addedClient.getId());
 
                 try {
-                    addedClient.send(Networking.Client.AddPlayer, idToPlayers.get(player.getKey()));
+                    addedClient.send(new PlayerMessage(player.getKey()).writeTo(addedClient.message(Networking.Client.AddPlayer)));
                 } catch (IOException exception) {
                     if (tryRemoveClosedClient(addedClient)) {
                         Log.error(this.getClass(), "Server IO error", exception);
@@ -90,20 +100,20 @@ public class ServerState {
     }
 
     void syncRemovePlayer(ServerClient removedClient, Map<UUID, ServerClient> otherClients) {
-        int disconnectedPlayerNumber = idToPlayers.remove(removedClient.getId());
+        Integer disconnectedPlayerNumber = idToPlayers.remove(removedClient.getId());
+        if (disconnectedPlayerNumber == null) {
+            // the client's match ended before it left.
+            return;
+        }
         players.remove(disconnectedPlayerNumber);
         alivePlayers.remove(disconnectedPlayerNumber);
+        world.removePlayer(removedClient.getId(), disconnectedPlayerNumber);
 
-        for (ServerClient serverClient : otherClients.values()) {
-            Log.debug(this.getClass(), "removing player {} from {}", disconnectedPlayerNumber, serverClient.getId());
-            try {
-                serverClient.send(Networking.Client.RemovePlayer, disconnectedPlayerNumber);
-            } catch (IOException exception) {
-                Log.debug("failed to remove from {}: {}", serverClient.getId(), exception.getMessage());
-                if (tryRemoveClosedClient(serverClient)) {
-                    Log.error(this.getClass(), "Server IO error", exception);
-                }
-            }
+        Log.debug(this.getClass(), "removing player {} from other clients", disconnectedPlayerNumber);
+        try {
+            broadcastExcept(new PlayerMessage(disconnectedPlayerNumber).writeTo(server.message(Networking.Client.RemovePlayer)).toFrame(), null);
+        } catch (IOException exception) {
+            Log.error(this.getClass(), "Server IO error", exception);
         }
 
         if (players.values().size() < 2) {
@@ -115,175 +125,86 @@ public class ServerState {
         }
     }
 
-    void handleKeyPress(ServerClient currentClient, Map<UUID, ServerClient> allClients) {
-        String key = "";
-        try {
-            int player = currentClient.in().readInt();
-            if (!players.containsKey(player)) {
-                Log.warn("Player {} was not found.", player);
-                server.removeClient(currentClient.getId());
-                return;
-            }
-            key = currentClient.in().readUTF();
-            // ensure identifier integrity
-            Keys.valueOf(key);
-            Log.trace(this.getClass(), "player {} pressed {}", player, key);
-
-            String keyPressed = key;
-            for (ServerClient serverClient : allClients.values()) {
-                if (serverClient.equals(currentClient)) {
-                    continue;
-                }
+    void handleInput(ServerClient currentClient, InputMessage input) {
+        Integer player = idToPlayers.get(currentClient.getId());
+        if (player == null) {
+            Log.warn("Client {} has no player.", currentClient.getId());
+            server.removeClient(currentClient.getId());
+            return;
+        }
 
-                try {
-                    serverClient.send(Networking.Client.PlayerKeyPress, player, keyPressed);
-                } catch (IOException exception) {
-                    if (tryRemoveClosedClient(serverClient, currentClient)) {
-                        Log.error(this.getClass(), "Server IO error", exception);
-                    }
-                }
-            }
-        } catch (IOException exception) {
-            if (tryRemoveClosedClient(currentClient)) {
-                Log.error(this.getClass(), "Server IO error", exception);
-            }
-        } catch (IllegalArgumentException exception) {
-            Log.warn(this.getClass(), "Invalid identifier press {} from client {}", key, currentClient.getId());
+        if (!Input.isValid(input.inputs())) {
+            Log.warn(this.getClass(), "Invalid inputs {} from player {}", input.inputs(), player);
+            return;
         }
+        Log.trace(this.getClass(), "player {} input {} holds {}", player, input.sequence(), input.inputs());
+        world.queueInput(player, input);
     }
 
-    void handleKeyRelease(ServerClient currentClient, Map<UUID, ServerClient> allClients) {
-        String key = "";
-        try {
-            int player = currentClient.in().readInt();
-            if (!players.containsKey(player)) {
-                Log.warn("Player {} was not found.", player);
-                server.removeClient(currentClient.getId());
-                return;
-            }
+    void syncPlayerTransform(ServerClient currentClient, TransformMessage transform) {
+        Integer player = idToPlayers.get(currentClient.getId());
+        if (player == null) {
+            Log.warn("Client {} has no player.", currentClient.getId());
+            server.removeClient(currentClient.getId());
+            return;
+        }
 
-            key = currentClient.in().readUTF();
-            // ensure identifier integrity
-            Keys.valueOf(key);
-            Log.trace(this.getClass(), "player {} released {}", player, key);
+        if (!world.place(player, transform)) {
+            Log.trace(this.getClass(), "Ignoring transform of already-placed player {}", player);
+            return;
+        }
+        Log.debug(this.getClass(), "Placing player {} at {} {} {}", player, transform.x(), transform.y(), transform.rotation());
+    }
 
-            String keyReleased = key;
-            for (ServerClient serverClient : allClients.values()) {
-                if (serverClient.equals(currentClient)) {
-                    continue;
-                }
+    void createSnowball(ServerClient currentClient, SnowballMessage snowball) {
+        Integer player = idToPlayers.get(currentClient.getId());
+        if (player == null) {
+            Log.warn("Client {} has no player.", currentClient.getId());
+            server.removeClient(currentClient.getId());
+            return;
+        }
 
-                try {
-                    serverClient.send(Networking.Client.PlayerKeyRelease, player, keyReleased);
-                } catch (IOException exception) {
-                    if (tryRemoveClosedClient(serverClient, currentClient)) {
-                        Log.error(this.getClass(), "Server IO error", exception);
-                    }
-                }
-            }
-        } catch (IOException exception) {
-            if (tryRemoveClosedClient(currentClient)) {
-                Log.error(this.getClass(), "Server IO error", exception);
-            }
-        } catch (IllegalArgumentException exception) {
-            Log.warn(this.getClass(), "Invalid identifier release {} from client {}", key, currentClient.getId());
+        if (!world.addSnowball(player, snowball)) {
+            Log.debug(this.getClass(), "Ignoring snowball from player {} along {} {}", player, snowball.trajectoryX(), snowball.trajectoryY());
         }
     }
 
-    void syncPlayerTransform(ServerClient currentClient, Map<UUID, ServerClient> allClients) {
-        try {
-            int syncPlayerNumber = currentClient.in().readInt();
-            if (!players.containsKey(syncPlayerNumber)) {
-                Log.warn("Player {} was not found.", syncPlayerNumber);
-                server.removeClient(currentClient.getId());
-                return;
-            }
-
-            float translationX = currentClient.in().readFloat();
-            float translationY = currentClient.in().readFloat();
-            float rotation = currentClient.in().readFloat();
-
-            Log.trace(
-                    this.getClass(),
-                    "Syncing player {} to {} {} {}",
-                    syncPlayerNumber,
-                    translationX,
-                    translationY,
-                    rotation
-            );
-
-            for (ServerClient serverClient : allClients.values()) {
-                if (serverClient.equals(currentClient)) {
-                    continue;
-                }
+    void acknowledgeSnapshot(ServerClient currentClient, SnapshotAckMessage acknowledgement) {
+        world.acknowledge(currentClient.getId(), acknowledgement.sequence());
+    }
 
-                try {
-                    serverClient.send(
-                            Networking.Client.PlayerSyncTransform,
-                            syncPlayerNumber,
-                            translationX,
-                            translationY,
-                            rotation
-                    );
-                } catch (IOException exception) {
-                    if (tryRemoveClosedClient(serverClient, currentClient)) {
-                        Log.error(this.getClass(), "Server IO error", exception);
-                    }
-                }
-            }
-        } catch (IOException exception) {
-            if (tryRemoveClosedClient(currentClient)) {
-                Log.error(this.getClass(), "Server IO error", exception);
-            }
-        }
+    /** Applies the events posted since the last tick, steps the world, then writes everything queued for the players. */
+    void tick() {
+        mailbox.drain(this::apply);
+        world.tick(server);
+        flush();
     }
 
-    public void createSnowball(ServerClient currentClient, Map<UUID, ServerClient> allClients) {
+    private void apply(Consumer<ServerState> event) {
         try {
-            int playerNumber = currentClient.in().readInt();
-            if (!players.containsKey(playerNumber)) {
-                Log.warn("Player {} was not found.", playerNumber);
-                server.removeClient(currentClient.getId());
-                return;
-            }
-
-            float trajectoryX = currentClient.in().readFloat();
-            float trajectoryY = currentClient.in().readFloat();
-            float rotation = currentClient.in().readFloat();
+            event.accept(this);
+        } catch (RuntimeException exception) {
+            Log.error(this.getClass(), "Room event failed", exception);
+        }
+    }
 
-            for (ServerClient serverClient : allClients.values()) {
-                if (serverClient.equals(currentClient)) {
-                    continue;
-                }
+    private void flush() {
+        for (ServerClient player : players.values()) {
+            player.flushNow();
+        }
+    }
 
-                try {
-                    serverClient.send(
-                            Networking.Client.PlayerCreateSnowball,
-                            playerNumber,
-                            trajectoryX,
-                            trajectoryY,
-                            rotation
-                    );
-                } catch (IOException exception) {
-                    if (tryRemoveClosedClient(serverClient, currentClient)) {
-                        Log.error(this.getClass(), "Server IO error", exception);
-                    }
-                }
-            }
-        } catch (IOException exception) {
-            if (tryRemoveClosedClient(currentClient)) {
-                Log.error(this.getClass(), "Server IO error", exception);
-            }
+    /** Removes {@code client} if a message couldn't be read from it because its connection closed. */
+    void readFailed(ServerClient client, IOException exception) {
+        if (tryRemoveClosedClient(client)) {
+            Log.error(this.getClass(), "Server IO error", exception);
         }
     }
 
-    public boolean tryRemoveClosedClient(ServerClient... serverClients) {
+    boolean tryRemoveClosedClient(ServerClient... serverClients) {
         boolean removedClosedClient = false;
         for (ServerClient serverClient : serverClients) {
-            if (!server.getClients().containsValue(serverClient)) {
-                serverClient.shutdown();
-                removedClosedClient = true;
-            } else if (serverClient.isConnectionClosed()) {
+            if (serverClient.isConnectionClosed()) {
                 server.removeClient(serverClient.getId());
                 removedClosedClient = true;
             }
@@ -291,91 +212,67 @@ public class ServerState {
         return !removedClosedClient;
     }
 
-    public void temperatureDeath(ServerClient currentClient, Map<UUID, ServerClient> allClients) {
-        try {
-            int playerNumber = currentClient.in().readInt();
-            if (!players.containsKey(playerNumber)) {
-                Log.warn("Player {} was not found.", playerNumber);
-                server.removeClient(currentClient.getId());
-                return;
-            }
-
-            int otherPlayerNumber = currentClient.in().readInt();
-
-            for (ServerClient serverClient : allClients.values()) {
-                if (serverClient.equals(currentClient)) {
-                    continue;
-                }
-
-                try {
-                    serverClient.send(
-                            Networking.Client.PlayerTemperatureDeath,
-                            playerNumber,
-                            otherPlayerNumber
-                    );
-                } catch (IOException exception) {
-                    if (tryRemoveClosedClient(serverClient, currentClient)) {
-                        Log.error(this.getClass(), "Server IO error", exception);
-                    }
-                }
-            }
+    void temperatureDeath(ServerClient currentClient, DeathMessage death) {
+        if (!isOwnDeath(currentClient, death)) {
+            return;
+        }
 
-            updatePlayerDeath(playerNumber, allClients);
+        try {
+            broadcastExcept(death.writeTo(server.message(Networking.Client.PlayerTemperatureDeath)).toFrame(), currentClient);
         } catch (IOException exception) {
-            if (tryRemoveClosedClient(currentClient)) {
-                Log.error(this.getClass(), "Server IO error", exception);
-            }
+            Log.error(this.getClass(), "Server IO error", exception);
         }
+
+        updatePlayerDeath(death.player());
     }
 
-    public void hitDamageDeath(ServerClient currentClient, Map<UUID, ServerClient> allClients) {
-        try {
-            int playerNumber = currentClient.in().readInt();
-            if (!players.containsKey(playerNumber)) {
-                Log.warn("Player {} was not found.", playerNumber);
-                server.removeClient(currentClient.getId());
-                return;
-            }
+    void hitDamageDeath(ServerClient currentClient, DeathMessage death) {
+        if (!isOwnDeath(currentClient, death)) {
+            return;
+        }
 
-            int otherPlayerNumber = currentClient.in().readInt();
+        try {
+            broadcastExcept(death.writeTo(server.message(Networking.Client.PlayerHitDamageDeath)).toFrame(), currentClient);
+        } catch (IOException exception) {
+            Log.error(this.getClass(), "Server IO error", exception);
+        }
 
-            for (ServerClient serverClient : allClients.values()) {
-                if (serverClient.equals(currentClient)) {
-                    continue;
-                }
+        updatePlayerDeath(death.player());
+    }
 
-                try {
-                    serverClient.send(
-                            Networking.Client.PlayerHitDamageDeath,
-                            playerNumber,
-                            otherPlayerNumber
-                    );
-                } catch (IOException exception) {
-                    if (tryRemoveClosedClient(serverClient, currentClient)) {
-                        Log.error(this.getClass(), "Server IO error", exception);
-                    }
-                }
-            }
+    /**
+     * Clients only report their own player's death; a report of another player's death, or of a player already dead, is
+     * ignored.
+     */
+    private boolean isOwnDeath(ServerClient currentClient, DeathMessage death) {
+        Integer player = idToPlayers.get(currentClient.getId());
+        if (player == null) {
+            Log.warn("Client {} has no player.", currentClient.getId());
+            server.removeClient(currentClient.getId());
+            return false;
+        }
 
-            updatePlayerDeath(playerNumber, allClients);
-        } catch (IOException exception) {
-            if (tryRemoveClosedClient(currentClient)) {
-                Log.error(this.getClass(), "Server IO error", exception);
-            }
+        if (player != death.player()) {
+            Log.warn(this.getClass(), "Player {} reported the death of player {}", player, death.player());
+            return false;
         }
+
+        AtomicBoolean isAlive = alivePlayers.get(player);
+        return isAlive != null && isAlive.get();
     }
 
-    private void updatePlayerDeath(int deadPlayer, Map<UUID, ServerClient> allClients) {
+    private void updatePlayerDeath(int deadPlayer) {
         if (!alivePlayers.containsKey(deadPlayer)) {
             Log.warn("Player {} was not found.", deadPlayer);
             return;
         }
         alivePlayers.get(deadPlayer).set(false);
+        world.markDead(deadPlayer);
         Log.info("{} player(s) left alive.", alivePlayers.values().stream().filter(AtomicBoolean::get).count());
-        checkWinCondition(allClients);
+        checkWinCondition();
     }
 
-    void checkWinCondition(Map<UUID, ServerClient> allClients) {
+    void checkWinCondition() {
         if (!isMatchRunning) {
             return;
         }
@@ -388,31 +285,60 @@ public class ServerState {
                     .get()
                     .getKey();
             Log.info("Only player {} is alive.", alivePlayer);
-            server.disallowClients();
             isMatchRunning = false;
 
-            for (ServerClient serverClient : allClients.values()) {
-                try {
-                    serverClient.send(Networking.Client.PlayerWins, alivePlayer);
-                } catch (IOException exception) {
-                    if (tryRemoveClosedClient(serverClient)) {
-                        Log.error(this.getClass(), "Server IO error", exception);
-                    }
-                }
+            try {
+                broadcastExcept(new PlayerMessage(alivePlayer).writeTo(server.message(Networking.Client.PlayerWins)).toFrame(), null);
+            } catch (IOException exception) {
+                Log.error(this.getClass(), "Server IO error", exception);
+            }
+            flush();
+
+            // the match is over, and its players go back to their menus. Their connections stay open until they leave,
+            // so the win is delivered, but the room is emptied for the next match right away.
+            rooms.endMatch(this, players.values());
+            resetServerState();
+        }
+    }
+
+    /**
+     * Sends {@code frame} to every player in this room other than {@code excludedClient}. Like
+     * {@link Server#broadcastExcept(Frame, ServerClient)}, clients that fail are removed once every player was sent to.
+     */
+    private void broadcastExcept(Frame frame, ServerClient excludedClient) {
+        List<ServerClient> failedClients = null;
+
+        for (ServerClient player : players.values()) {
+            if (player == excludedClient) {
+                continue;
             }
 
             try {
-                gameServer.resetServer(new AtomicReference<>(server));
-            } catch (GeneralSecurityException | IOException e) {
-                e.printStackTrace();
+                player.send(frame);
+            } catch (IOException exception) {
+                Log.debug(this.getClass(), "Couldn't send to client {}: {}", player.getId(), exception.getMessage());
+                if (failedClients == null) {
+                    failedClients = new ArrayList<>();
+                }
+                failedClients.add(player);
             }
         }
+
+        if (failedClients == null) {
+            return;
+        }
+
+        for (ServerClient failedClient : failedClients) {
+            server.removeClient(failedClient.getId());
+        }
     }
 
     private void resetServerState() {
         players.clear();
         idToPlayers.clear();
         alivePlayers.clear();
+        world.clear();
+        isMatchRunning = false;
         newPlayerIncrement = 1;
     }
 }
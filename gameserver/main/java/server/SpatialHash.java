@@ -0,0 +1,80 @@
+package server;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid hashed into a fixed number of buckets, holding values by the cells their bounds overlap. Cells that
+ * hash to the same bucket share it, so lookups return candidates that still need an exact test. Meant to be cleared and
+ * refilled every tick; refilling reuses its arrays.
+ */
+final class SpatialHash {
+
+    static final int NoEntry = -1;
+
+    private static final int InitialCapacity = 64;
+
+    private final float inverseCellSize;
+    private final int bucketMask;
+    private final int[] buckets;
+
+    private int[] values = new int[InitialCapacity];
+    private int[] nextEntries = new int[InitialCapacity];
+    private int size;
+
+    /** @param bucketCount a power of two. */
+    SpatialHash(float cellSize, int bucketCount) {
+        if (Integer.bitCount(bucketCount) != 1) {
+            throw new IllegalArgumentException("Bucket count " + bucketCount + " is not a power of two.");
+        }
+
+        inverseCellSize = 1f / cellSize;
+        bucketMask = bucketCount - 1;
+        buckets = new int[bucketCount];
+        Arrays.fill(buckets, NoEntry);
+    }
+
+    void clear() {
+        Arrays.fill(buckets, NoEntry);
+        size = 0;
+    }
+
+    /** Adds {@code value} to every cell the box from ({@code minX}, {@code minY}) to ({@code maxX}, {@code maxY}) overlaps. */
+    void insert(int value, float minX, float minY, float maxX, float maxY) {
+        int maxCellX = cellOf(maxX);
+        int maxCellY = cellOf(maxY);
+        for (int cellY = cellOf(minY); cellY <= maxCellY; cellY++) {
+            for (int cellX = cellOf(minX); cellX <= maxCellX; cellX++) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                    nextEntries = Arrays.copyOf(nextEntries, size * 2);
+                }
+
+                int bucket = bucketOf(cellX, cellY);
+                values[size] = value;
+                nextEntries[size] = buckets[bucket];
+                buckets[bucket] = size++;
+            }
+        }
+    }
+
+    /** @return the first entry in the bucket of the cell holding ({@code x}, {@code y}), or {@link #NoEntry}. */
+    int first(float x, float y) {
+        return buckets[bucketOf(cellOf(x), cellOf(y))];
+    }
+
+    int next(int entry) {
+        return nextEntries[entry];
+    }
+
+    int value(int entry) {
+        return values[entry];
+    }
+
+    private int cellOf(float coordinate) {
+        return (int) Math.floor(coordinate * inverseCellSize);
+    }
+
+    private int bucketOf(int cellX, int cellY) {
+        return ((cellX * 73856093) ^ (cellY * 19349663)) & bucketMask;
+    }
+}
@@ -0,0 +1,86 @@
+package server;
+
+import java.util.Arrays;
+
+import core.util.Networking;
+
+/**
+ * Where each player was over the last second of ticks, so hits can be judged against what a thrower saw. Entries are
+ * kept in flat arrays indexed by slot and tick, and slots are reused as players leave, so recording never allocates.
+ */
+final class TransformHistory {
+
+    static final int Ticks = Networking.TickRate;
+
+    private static final long NoTick = -1L;
+    private static final int InitialSlots = 16;
+
+    private float[] xs = new float[InitialSlots * Ticks];
+    private float[] ys = new float[InitialSlots * Ticks];
+    private float[] rotations = new float[InitialSlots * Ticks];
+    private long[] recordedTicks = new long[InitialSlots * Ticks];
+    private int[] freeSlots = new int[InitialSlots];
+    private int freeSlotCount;
+    private int slotCount;
+
+    /** @return an empty slot for a new player, to be given back with {@link #release(int)}. */
+    int allocate() {
+        int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            slot = slotCount++;
+            if (slot * Ticks == recordedTicks.length) {
+                int length = recordedTicks.length * 2;
+                xs = Arrays.copyOf(xs, length);
+                ys = Arrays.copyOf(ys, length);
+                rotations = Arrays.copyOf(rotations, length);
+                recordedTicks = Arrays.copyOf(recordedTicks, length);
+            }
+        }
+
+        Arrays.fill(recordedTicks, slot * Ticks, (slot + 1) * Ticks, NoTick);
+        return slot;
+    }
+
+    void release(int slot) {
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    void clear() {
+        freeSlotCount = 0;
+        slotCount = 0;
+    }
+
+    void record(int slot, long tick, float x, float y, float rotation) {
+        int index = indexOf(slot, tick);
+        xs[index] = x;
+        ys[index] = y;
+        rotations[index] = rotation;
+        recordedTicks[index] = tick;
+    }
+
+    /** @return whether the slot's player was recorded at {@code tick}, and that entry hasn't been overwritten. */
+    boolean has(int slot, long tick) {
+        return tick >= 0 && recordedTicks[indexOf(slot, tick)] == tick;
+    }
+
+    float x(int slot, long tick) {
+        return xs[indexOf(slot, tick)];
+    }
+
+    float y(int slot, long tick) {
+        return ys[indexOf(slot, tick)];
+    }
+
+    float rotation(int slot, long tick) {
+        return rotations[indexOf(slot, tick)];
+    }
+
+    private static int indexOf(int slot, long tick) {
+        return slot * Ticks + (int) (tick % Ticks);
+    }
+}
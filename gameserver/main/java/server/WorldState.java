@@ -0,0 +1,661 @@
+package server;
+
+import tech.fastj.logging.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import core.message.EntityTable;
+import core.message.HitMessage;
+import core.message.InputMessage;
+import core.message.Snapshot;
+import core.message.SnapshotHistory;
+import core.message.SnowballMessage;
+import core.message.TransformMessage;
+import core.util.Hitboxes;
+import core.util.Movement;
+import core.util.Networking;
+import network.message.Frame;
+import network.server.Server;
+import network.server.ServerClient;
+
+/**
+ * The authoritative world of one room, stepped at a fixed {@link Networking#TickRate}. Only the room's
+ * {@link RoomLoop} touches it, so none of it is locked. Handlers queue each player's inputs as messages arrive; every
+ * tick applies them and moves players and snowballs with the rules in {@link Movement}. The world is sent to each
+ * client as a {@link Snapshot} of the changes since the last snapshot that client acknowledged.
+ * <p>
+ * Each client only sees the players and snowballs within {@link #InterestRadius} of its own player, found through a
+ * coarse grid, so the cost of a snapshot or a hit grows with the entities nearby rather than with the whole arena.
+ * Entities crossing the radius show up in the snapshot as added or removed. Each client keeps its own snapshot history
+ * to delta against.
+ * <p>
+ * Snapshots are sent when the world changes in a way clients can't carry on by themselves: players join, leave or
+ * change inputs, snowballs come and go, or a player strays from where clients extrapolate it to be from its last two
+ * snapshots. Each change is marked where it happened, and only due for the clients within {@link #InterestRadius} of
+ * it, so a busy corner of the arena doesn't speed up everyone else's snapshots. Each client gets at most
+ * {@link Networking#SnapshotRate} snapshots a second while things near it change, and
+ * {@link Networking#IdleSnapshotRate} while they don't.
+ * <p>
+ * Snowballs hit players on the server. Players are hashed into a grid each tick, so each snowball only tests the
+ * players sharing its cell, however many snowballs are in flight. A thrown snowball starts from where the server has
+ * its thrower, and is judged against where players were in the snapshot its thrower was looking at, then caught up to
+ * the present.
+ */
+class WorldState {
+
+    private static final int MinTicksPerSnapshot = Math.max(1, Networking.TickRate / Networking.SnapshotRate);
+    private static final int MaxTicksPerSnapshot = Math.max(1, Networking.TickRate / Networking.IdleSnapshotRate);
+    private static final float MaxPositionError = 1f;
+    private static final float MaxRotationError = 1f;
+    private static final int SnowballIdMask = (1 << EntityTable.IdBits) - 1;
+    private static final float CellSize = 64f;
+    private static final int GridBuckets = 1024;
+    private static final int MaxRewindTicks = TransformHistory.Ticks - 1;
+    /** Clients send unit-length trajectories, give or take quantizing, so a much shorter one wasn't sent honestly. */
+    private static final float MinTrajectoryLength = 0.5f;
+    static final float InterestRadius = 1600f;
+
+    private final Map<Integer, PlayerState> players = new TreeMap<>();
+    private final Map<Integer, SnowballState> snowballs = new TreeMap<>();
+    private final Map<UUID, ClientView> clientViews = new HashMap<>();
+    private final SpatialHash playerGrid = new SpatialHash(CellSize, GridBuckets);
+    private final List<PlayerState> hittablePlayers = new ArrayList<>();
+    /** Placed players by their index, and snowballs by their index's complement, in cells of {@link #InterestRadius}. */
+    private final SpatialHash interestGrid = new SpatialHash(InterestRadius, GridBuckets);
+    private final List<PlayerState> placedPlayers = new ArrayList<>();
+    private final List<SnowballState> flyingSnowballs = new ArrayList<>();
+    private int[] nearbyPlayers = new int[16];
+    private int[] nearbySnowballs = new int[16];
+    private int nearbyPlayerCount, nearbySnowballCount;
+    private final List<HitMessage> hits = new ArrayList<>();
+    private final TransformHistory transforms = new TransformHistory();
+
+    private int nextSnowballId;
+    private long tick;
+    /** Where clients need a snapshot for a change since the last tick, as x and y pairs. */
+    private float[] changes = new float[32];
+    private int changeCount;
+
+    void addPlayer(ServerClient client, int playerNumber) {
+        ClientView view = new ClientView(client);
+        PlayerState replaced = players.put(playerNumber, new PlayerState(playerNumber, transforms.allocate(), view));
+        if (replaced != null) {
+            transforms.release(replaced.slot);
+        }
+        // the new client's first snapshot is due right away, and no one else sees the player until it's placed.
+        clientViews.put(client.getId(), view);
+    }
+
+    void removePlayer(UUID clientId, int playerNumber) {
+        PlayerState player = players.remove(playerNumber);
+        if (player != null) {
+            transforms.release(player.slot);
+            if (player.isPlaced) {
+                changedAt(player.x, player.y);
+            }
+        }
+        clientViews.remove(clientId);
+    }
+
+    /**
+     * Places a player where its client spawned it. Once placed, the player only moves by its inputs.
+     *
+     * @return whether the player was placed, rather than missing or already placed.
+     */
+    boolean place(int playerNumber, TransformMessage transform) {
+        PlayerState player = players.get(playerNumber);
+        if (player == null || player.isPlaced) {
+            return false;
+        }
+
+        player.isPlaced = true;
+        player.x = transform.x();
+        player.y = transform.y();
+        player.rotation = Movement.turn(transform.rotation(), 0f);
+        changedAt(player.x, player.y);
+        return true;
+    }
+
+    /** Queues {@code input} to be held from the next tick on. */
+    void queueInput(int playerNumber, InputMessage input) {
+        PlayerState player = players.get(playerNumber);
+        if (player != null) {
+            player.queuedInputs = input.inputs();
+            player.queuedInputSequence = input.sequence();
+        }
+    }
+
+    /**
+     * Throws a snowball from the thrower's center, along the thrower's trajectory scaled to unit length.
+     *
+     * @return whether the snowball was thrown, rather than its thrower being missing, unplaced or dead, or its
+     *         trajectory having no direction.
+     */
+    boolean addSnowball(int playerNumber, SnowballMessage snowball) {
+        PlayerState thrower = players.get(playerNumber);
+        if (thrower == null || !thrower.isPlaced || !thrower.isAlive) {
+            return false;
+        }
+
+        float trajectoryLength = (float) Math.hypot(snowball.trajectoryX(), snowball.trajectoryY());
+        if (!(trajectoryLength >= MinTrajectoryLength)) {
+            return false;
+        }
+
+        int id = nextSnowballId;
+        nextSnowballId = (nextSnowballId + 1) & SnowballIdMask;
+        SnowballState state = new SnowballState(
+                id,
+                playerNumber,
+                thrower.x + Hitboxes.PlayerHalfWidth,
+                thrower.y + Hitboxes.PlayerHalfHeight,
+                snowball.trajectoryX() / trajectoryLength,
+                snowball.trajectoryY() / trajectoryLength,
+                snowball.rotation()
+        );
+
+        // the thrower saw players as they were at viewTick; catch the snowball up to now against where they were.
+        for (long pastTick = viewTickOf(thrower.view, snowball) + 1; pastTick <= tick; pastTick++) {
+            if (!state.move()) {
+                return true;
+            }
+
+            PlayerState player = playerHitAt(state, pastTick);
+            if (player != null) {
+                hits.add(new HitMessage(id, player.number, playerNumber));
+                return true;
+            }
+        }
+        snowballs.put(id, state);
+        changedAt(state.x, state.y);
+        return true;
+    }
+
+    /** Dead players stay in snapshots, but snowballs pass through them. */
+    void markDead(int playerNumber) {
+        PlayerState player = players.get(playerNumber);
+        if (player != null) {
+            player.isAlive = false;
+            changedAt(player.x, player.y);
+        }
+    }
+
+    /** Acknowledgements arrive as datagrams, so an older one may arrive after a newer one. */
+    void acknowledge(UUID clientId, int sequence) {
+        ClientView view = clientViews.get(clientId);
+        if (view != null && sequence > view.ackedSequence && sequence <= view.history.newestSequence()) {
+            view.ackedSequence = sequence;
+        }
+    }
+
+    void clear() {
+        players.clear();
+        snowballs.clear();
+        clientViews.clear();
+        nextSnowballId = 0;
+        changeCount = 0;
+        transforms.clear();
+    }
+
+    /** Steps the world by one tick, sends its hits, and sends a snapshot if one is due. */
+    void tick(Server server) {
+        tick++;
+        movePlayers();
+        moveSnowballs();
+        fillInterestGrid();
+        sendHits(server);
+        markChangedViews();
+        if (isSnapshotDue()) {
+            sendSnapshot(server);
+        }
+    }
+
+    private boolean isSnapshotDue() {
+        for (ClientView view : clientViews.values()) {
+            if (view.isSnapshotDue(tick)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Takes the next snapshot of each due client's surroundings and sends it. */
+    private void sendSnapshot(Server server) {
+        for (PlayerState player : placedPlayers) {
+            player.sent(tick);
+        }
+
+        for (PlayerState player : players.values()) {
+            ClientView view = player.view;
+            if (!view.isSnapshotDue(tick)) {
+                continue;
+            }
+
+            view.sentTick = tick;
+            view.hasChanges = false;
+            Snapshot snapshot = takeSnapshot(player);
+            try {
+                view.client.send(snapshot.writeTo(server.message(Networking.Client.WorldSnapshot).coalesceBy(0), view.history.get(view.ackedSequence)).toFrame());
+            } catch (IOException exception) {
+                Log.debug(this.getClass(), "Couldn't send snapshot {} to client {}: {}", snapshot.sequence(), view.client.getId(), exception.getMessage());
+            }
+        }
+    }
+
+    private void movePlayers() {
+        playerGrid.clear();
+        hittablePlayers.clear();
+        float reach = Hitboxes.playerReach() + Hitboxes.SnowballRadius;
+
+        for (PlayerState player : players.values()) {
+            if (player.inputSequence != player.queuedInputSequence) {
+                player.inputs = player.queuedInputs;
+                player.inputSequence = player.queuedInputSequence;
+                player.inputTick = tick;
+                changedAt(player.x, player.y);
+            }
+            if (!player.isPlaced) {
+                continue;
+            }
+
+            float speed = Movement.speedOf(player.inputs);
+            player.rotation = Movement.turn(player.rotation, Movement.turnOf(player.inputs));
+            player.x += Movement.forwardX(player.rotation) * speed;
+            player.y += Movement.forwardY(player.rotation) * speed;
+            transforms.record(player.slot, tick, player.x, player.y, player.rotation);
+            if (player.hasStrayed(tick)) {
+                changedAt(player.x, player.y);
+            }
+
+            if (player.isAlive) {
+                player.updateBox();
+                playerGrid.insert(hittablePlayers.size(), player.centerX - reach, player.centerY - reach, player.centerX + reach, player.centerY + reach);
+                hittablePlayers.add(player);
+            }
+        }
+    }
+
+    private void moveSnowballs() {
+        Iterator<SnowballState> iterator = snowballs.values().iterator();
+        while (iterator.hasNext()) {
+            SnowballState snowball = iterator.next();
+            if (!snowball.move()) {
+                iterator.remove();
+                changedAt(snowball.x, snowball.y);
+                continue;
+            }
+
+            PlayerState player = playerHitBy(snowball);
+            if (player != null) {
+                hits.add(new HitMessage(snowball.id, player.number, snowball.owner));
+                iterator.remove();
+                changedAt(snowball.x, snowball.y);
+            }
+        }
+    }
+
+    private PlayerState playerHitBy(SnowballState snowball) {
+        for (int entry = playerGrid.first(snowball.x, snowball.y); entry != SpatialHash.NoEntry; entry = playerGrid.next(entry)) {
+            PlayerState player = hittablePlayers.get(playerGrid.value(entry));
+            if (player.number != snowball.owner && player.overlaps(snowball.x, snowball.y, Hitboxes.SnowballRadius)) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    /** @return the tick of the snapshot the thrower was looking at, or the current tick if it's no longer known. */
+    private long viewTickOf(ClientView view, SnowballMessage snowball) {
+        int sequence = snowball.snapshotNear(view.history.newestSequence());
+        if (view.history.get(sequence) == null) {
+            return tick;
+        }
+
+        return Math.max(view.snapshotTicks[sequence % SnapshotHistory.Size], tick - MaxRewindTicks);
+    }
+
+    private PlayerState playerHitAt(SnowballState snowball, long pastTick) {
+        for (PlayerState player : players.values()) {
+            if (player.number == snowball.owner || !player.isAlive || !transforms.has(player.slot, pastTick)) {
+                continue;
+            }
+
+            float rotation = transforms.rotation(player.slot, pastTick);
+            double radians = Math.toRadians(rotation);
+            boolean isHit = overlaps(
+                    transforms.x(player.slot, pastTick) + Hitboxes.PlayerHalfWidth,
+                    transforms.y(player.slot, pastTick) + Hitboxes.PlayerHalfHeight,
+                    (float) Math.cos(radians),
+                    (float) Math.sin(radians),
+                    snowball.x,
+                    snowball.y,
+                    Hitboxes.SnowballRadius
+            );
+            if (isHit) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    /** Tests a circle against a player's box turned by {@code cos} and {@code sin}, in the box's own unrotated space. */
+    private static boolean overlaps(float centerX, float centerY, float cos, float sin, float circleX, float circleY, float radius) {
+        float dx = circleX - centerX;
+        float dy = circleY - centerY;
+        float localX = dx * cos + dy * sin;
+        float localY = dy * cos - dx * sin;
+        float outsideX = Math.abs(localX) - Hitboxes.PlayerHalfWidth;
+        float outsideY = Math.abs(localY) - Hitboxes.PlayerHalfHeight;
+        if (outsideX <= 0f && outsideY <= 0f) {
+            return true;
+        }
+
+        float clampedX = Math.max(outsideX, 0f);
+        float clampedY = Math.max(outsideY, 0f);
+        return clampedX * clampedX + clampedY * clampedY <= radius * radius;
+    }
+
+    /** Sends each hit to the clients of players near the player hit, and to the thrower's client. */
+    private void sendHits(Server server) {
+        for (HitMessage hit : hits) {
+            Log.debug(this.getClass(), "Snowball {} from player {} hit player {}", hit.snowball(), hit.thrower(), hit.player());
+            PlayerState player = players.get(hit.player());
+            if (player == null) {
+                continue;
+            }
+
+            Frame frame;
+            try {
+                frame = hit.writeTo(server.message(Networking.Client.PlayerHit)).toFrame();
+            } catch (IOException exception) {
+                Log.error(this.getClass(), "Server IO error", exception);
+                continue;
+            }
+
+            boolean isThrowerNearby = false;
+            gatherNearby(player.x, player.y);
+            for (int i = 0; i < nearbyPlayerCount; i++) {
+                PlayerState nearbyPlayer = placedPlayers.get(nearbyPlayers[i]);
+                isThrowerNearby |= nearbyPlayer.number == hit.thrower();
+                send(nearbyPlayer, frame);
+            }
+            if (!isThrowerNearby) {
+                send(players.get(hit.thrower()), frame);
+            }
+        }
+        hits.clear();
+    }
+
+    /**
+     * Sends {@code frame} to {@code player}'s client. Like snapshots, a client that can't be sent to is skipped rather
+     * than stopping the rest; its connection's closing removes it.
+     */
+    private void send(PlayerState player, Frame frame) {
+        if (player == null) {
+            return;
+        }
+
+        try {
+            player.view.client.send(frame);
+        } catch (IOException exception) {
+            Log.debug(this.getClass(), "Couldn't send hit to client {}: {}", player.view.client.getId(), exception.getMessage());
+        }
+    }
+
+    /** Marks a change at ({@code x}, {@code y}), for the clients within {@link #InterestRadius} of it. */
+    private void changedAt(float x, float y) {
+        if (changeCount == changes.length) {
+            changes = Arrays.copyOf(changes, changeCount * 2);
+        }
+        changes[changeCount++] = x;
+        changes[changeCount++] = y;
+    }
+
+    /** Passes the changes marked since the last tick on to the clients of the placed players near them. */
+    private void markChangedViews() {
+        for (int i = 0; i < changeCount; i += 2) {
+            gatherNearby(changes[i], changes[i + 1]);
+            for (int j = 0; j < nearbyPlayerCount; j++) {
+                placedPlayers.get(nearbyPlayers[j]).view.hasChanges = true;
+            }
+        }
+        changeCount = 0;
+    }
+
+    private void fillInterestGrid() {
+        interestGrid.clear();
+        placedPlayers.clear();
+        flyingSnowballs.clear();
+
+        for (PlayerState player : players.values()) {
+            if (player.isPlaced) {
+                interestGrid.insert(placedPlayers.size(), player.x, player.y, player.x, player.y);
+                placedPlayers.add(player);
+            }
+        }
+        for (SnowballState snowball : snowballs.values()) {
+            interestGrid.insert(~flyingSnowballs.size(), snowball.x, snowball.y, snowball.x, snowball.y);
+            flyingSnowballs.add(snowball);
+        }
+    }
+
+    /**
+     * Finds the placed players and snowballs within {@link #InterestRadius} of ({@code x}, {@code y}), as indices into
+     * {@link #placedPlayers} and {@link #flyingSnowballs} in {@link #nearbyPlayers} and {@link #nearbySnowballs}.
+     * Both lists are in the same order as their ids.
+     */
+    private void gatherNearby(float x, float y) {
+        nearbyPlayerCount = 0;
+        nearbySnowballCount = 0;
+
+        // the radius is one cell, so everything within it is in the 3x3 cells around the center.
+        for (int cellY = -1; cellY <= 1; cellY++) {
+            for (int cellX = -1; cellX <= 1; cellX++) {
+                int entry = interestGrid.first(x + cellX * InterestRadius, y + cellY * InterestRadius);
+                for (; entry != SpatialHash.NoEntry; entry = interestGrid.next(entry)) {
+                    int value = interestGrid.value(entry);
+                    if (value >= 0) {
+                        PlayerState player = placedPlayers.get(value);
+                        if (isNearby(player.x, player.y, x, y)) {
+                            if (nearbyPlayerCount == nearbyPlayers.length) {
+                                nearbyPlayers = Arrays.copyOf(nearbyPlayers, nearbyPlayerCount * 2);
+                            }
+                            nearbyPlayers[nearbyPlayerCount++] = value;
+                        }
+                    } else {
+                        SnowballState snowball = flyingSnowballs.get(~value);
+                        if (isNearby(snowball.x, snowball.y, x, y)) {
+                            if (nearbySnowballCount == nearbySnowballs.length) {
+                                nearbySnowballs = Arrays.copyOf(nearbySnowballs, nearbySnowballCount * 2);
+                            }
+                            nearbySnowballs[nearbySnowballCount++] = ~value;
+                        }
+                    }
+                }
+            }
+        }
+
+        // cells sharing a bucket list their entries more than once.
+        nearbyPlayerCount = sortDistinct(nearbyPlayers, nearbyPlayerCount);
+        nearbySnowballCount = sortDistinct(nearbySnowballs, nearbySnowballCount);
+    }
+
+    private static boolean isNearby(float x, float y, float centerX, float centerY) {
+        float dx = x - centerX;
+        float dy = y - centerY;
+        return dx * dx + dy * dy <= InterestRadius * InterestRadius;
+    }
+
+    /** @return how many distinct values are left at the start of {@code values} once sorted. */
+    private static int sortDistinct(int[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || values[i] != values[distinct - 1]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return distinct;
+    }
+
+    /** Takes the next snapshot for {@code viewer}'s client, of what's around the viewer. */
+    private Snapshot takeSnapshot(PlayerState viewer) {
+        ClientView view = viewer.view;
+        Snapshot snapshot = view.history.next();
+        view.snapshotTicks[snapshot.sequence() % SnapshotHistory.Size] = tick;
+        snapshot.setTick((int) tick);
+        // players join snapshots once their client first tells us where they are, so until then there's no center.
+        if (!viewer.isPlaced) {
+            return snapshot;
+        }
+
+        gatherNearby(viewer.x, viewer.y);
+        EntityTable playerTable = snapshot.players();
+        for (int i = 0; i < nearbyPlayerCount; i++) {
+            PlayerState player = placedPlayers.get(nearbyPlayers[i]);
+            int index = playerTable.add(player.number);
+            playerTable.set(index, Snapshot.PlayerX, TransformMessage.X.quantize(player.x));
+            playerTable.set(index, Snapshot.PlayerY, TransformMessage.Y.quantize(player.y));
+            playerTable.set(index, Snapshot.PlayerRotation, TransformMessage.Rotation.quantize(player.rotation));
+            playerTable.set(index, Snapshot.PlayerInputs, player.inputs);
+            playerTable.set(index, Snapshot.PlayerInputSequence, player.inputSequence);
+            playerTable.set(index, Snapshot.PlayerInputTick, (int) player.inputTick & ((1 << Snapshot.TickBits) - 1));
+        }
+
+        EntityTable snowballTable = snapshot.snowballs();
+        for (int i = 0; i < nearbySnowballCount; i++) {
+            SnowballState snowball = flyingSnowballs.get(nearbySnowballs[i]);
+            int index = snowballTable.add(snowball.id);
+            snowballTable.set(index, Snapshot.SnowballOwner, snowball.owner);
+            snowballTable.set(index, Snapshot.SnowballX, TransformMessage.X.quantize(snowball.x));
+            snowballTable.set(index, Snapshot.SnowballY, TransformMessage.Y.quantize(snowball.y));
+            snowballTable.set(index, Snapshot.SnowballRotation, snowball.rotation);
+        }
+
+        return snapshot;
+    }
+
+    private static class PlayerState {
+        final int number;
+        final int slot;
+        final ClientView view;
+        boolean isPlaced;
+        boolean isAlive = true;
+        float x, y, rotation;
+        int inputs, queuedInputs;
+        int inputSequence, queuedInputSequence;
+        long inputTick;
+        float centerX, centerY, cos, sin;
+        boolean isSent;
+        long sentTick;
+        float sentX, sentY, sentRotation;
+        float sentMovementX, sentMovementY, sentTurn;
+
+        PlayerState(int number, int slot, ClientView view) {
+            this.number = number;
+            this.slot = slot;
+            this.view = view;
+        }
+
+        void updateBox() {
+            centerX = x + Hitboxes.PlayerHalfWidth;
+            centerY = y + Hitboxes.PlayerHalfHeight;
+            double radians = Math.toRadians(rotation);
+            cos = (float) Math.cos(radians);
+            sin = (float) Math.sin(radians);
+        }
+
+        boolean overlaps(float circleX, float circleY, float radius) {
+            return WorldState.overlaps(centerX, centerY, cos, sin, circleX, circleY, radius);
+        }
+
+        /** Records the player as sent in a snapshot, extrapolating onward from the one it was last sent in. */
+        void sent(long tick) {
+            if (isSent && tick > sentTick) {
+                float ticks = tick - sentTick;
+                sentMovementX = (x - sentX) / ticks;
+                sentMovementY = (y - sentY) / ticks;
+                sentTurn = (Movement.turn(rotation - sentRotation, 180f) - 180f) / ticks;
+            }
+
+            isSent = true;
+            sentTick = tick;
+            sentX = x;
+            sentY = y;
+            sentRotation = rotation;
+        }
+
+        /** @return whether the player is too far from where clients extrapolate it to be by {@code tick}. */
+        boolean hasStrayed(long tick) {
+            if (!isSent) {
+                return false;
+            }
+
+            long ticks = tick - sentTick;
+            float errorX = sentX + sentMovementX * ticks - x;
+            float errorY = sentY + sentMovementY * ticks - y;
+            float errorRotation = Movement.turn(sentRotation + sentTurn * ticks - rotation, 180f) - 180f;
+            return errorX * errorX + errorY * errorY > MaxPositionError * MaxPositionError
+                    || Math.abs(errorRotation) > MaxRotationError;
+        }
+    }
+
+    /**
+     * What a client has been sent, and acknowledged, of the world. The room keeps its own reference to the client, so it
+     * never looks clients up in the server's map from its loop.
+     */
+    private static class ClientView {
+        final ServerClient client;
+        final SnapshotHistory history = new SnapshotHistory();
+        final long[] snapshotTicks = new long[SnapshotHistory.Size];
+        int ackedSequence = Snapshot.NoSequence;
+        long sentTick = Long.MIN_VALUE / 2;
+        /** Whether something within the client's interest radius changed since its last snapshot. */
+        boolean hasChanges = true;
+
+        ClientView(ServerClient client) {
+            this.client = client;
+        }
+
+        boolean isSnapshotDue(long tick) {
+            long ticks = tick - sentTick;
+            return ticks >= MaxTicksPerSnapshot || (ticks >= MinTicksPerSnapshot && hasChanges);
+        }
+    }
+
+    private static class SnowballState {
+        final int id;
+        final int owner;
+        final int rotation;
+        final float movementX, movementY;
+        float x, y, life;
+
+        SnowballState(int id, int owner, float x, float y, float trajectoryX, float trajectoryY, float rotation) {
+            this.id = id;
+            this.owner = owner;
+            this.rotation = TransformMessage.Rotation.quantize(rotation);
+            movementX = trajectoryX * Movement.SnowballSpeed;
+            movementY = trajectoryY * Movement.SnowballSpeed;
+            this.x = x;
+            this.y = y;
+            life = ThreadLocalRandom.current().nextFloat(Movement.SnowballMinDistance, Movement.SnowballMaxDistance);
+        }
+
+        /** @return whether the snowball is still flying after moving a tick. */
+        boolean move() {
+            x += movementX;
+            y += movementY;
+            life -= Math.abs(movementX) + Math.abs(movementY);
+            return life > 0f;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MailboxTest {
+
+    private final Mailbox<Integer> mailbox = new Mailbox<>();
+
+    @Test
+    void drainsInPostOrder() {
+        for (int i = 0; i < 5; i++) {
+            mailbox.post(i);
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(5, mailbox.drain(drained::add));
+        assertEquals(List.of(0, 1, 2, 3, 4), drained);
+        assertEquals(0, mailbox.drain(drained::add));
+    }
+
+    @Test
+    void messagesPostedWhileDrainingWaitForTheNextDrain() {
+        mailbox.post(1);
+        mailbox.post(2);
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, mailbox.drain(message -> {
+            drained.add(message);
+            mailbox.post(message + 10);
+        }));
+        assertEquals(List.of(1, 2), drained);
+
+        drained.clear();
+        assertEquals(2, mailbox.drain(drained::add));
+        assertEquals(List.of(11, 12), drained);
+    }
+
+    @Test
+    void keepsEachProducersOrderWhileDrainingConcurrently() throws InterruptedException {
+        int producers = 4;
+        int messagesEach = 100_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int producer = 0; producer < producers; producer++) {
+            int first = producer * messagesEach;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException exception) {
+                    return;
+                }
+                for (int i = 0; i < messagesEach; i++) {
+                    mailbox.post(first + i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        int[] nextExpected = new int[producers];
+        for (int producer = 0; producer < producers; producer++) {
+            nextExpected[producer] = producer * messagesEach;
+        }
+        int[] received = new int[1];
+        start.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received[0] < producers * messagesEach && System.nanoTime() < deadline) {
+            mailbox.drain(message -> {
+                int producer = message / messagesEach;
+                // a producer's messages must arrive in the order it posted them, even mixed in with others'.
+                assertEquals(nextExpected[producer], (int) message, "producer " + producer + " out of order");
+                nextExpected[producer]++;
+                received[0]++;
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(producers * messagesEach, received[0]);
+        assertEquals(0, mailbox.drain(message -> {}));
+        for (int producer = 0; producer < producers; producer++) {
+            assertEquals((producer + 1) * messagesEach, nextExpected[producer], "producer " + producer + " lost messages");
+        }
+    }
+}
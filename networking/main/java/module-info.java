@@ -1,7 +1,9 @@
 module tech.fastj.simplenet {
     requires transitive fastj.library;
     exports network.client;
+    exports network.message;
     exports network.security;
     exports network.security.util;
     exports network.server;
+    exports network.transport;
 }
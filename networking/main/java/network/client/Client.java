@@ -2,134 +2,330 @@ package network.client;
 
 import tech.fastj.logging.Log;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
+import network.message.Delivery;
+import network.message.FlushPolicy;
+import network.message.FrameReader;
+import network.message.FrameWriter;
+import network.message.Frames;
+import network.message.MessageReader;
+import network.security.DatagramCipher;
+import network.security.DatagramSession;
+import network.security.SecureChannelConnection;
+import network.security.SecureEngineFactory;
 import network.security.SecureServerConfig;
 import network.security.SecureSocketFactory;
 import network.server.Server;
+import network.transport.ChannelConnection;
+import network.transport.ChannelInputStream;
+import network.transport.ChannelOutputStream;
+import network.transport.ExecutionMode;
+import network.transport.Reactor;
+import network.transport.TransportType;
 
 public class Client implements Runnable {
 
-    private final SSLSocket socket;
-    private final ObjectInputStream in;
-    private final ObjectOutputStream out;
-    private ExecutorService serverListener = Executors.newSingleThreadExecutor();
+    private static final int OutputBufferSize = 8 * 1024;
+
+    private final Socket socket;
+    private final FrameReader frameReader;
+    private final OutputStream out;
+    private MessageReader in;
+    private final ChannelConnection connection;
+    private final Reactor reactor;
+    private final ExecutorService reactorThread;
+    private final ExecutionMode executionMode;
+    private final FlushPolicy flushPolicy;
+    private int unflushedBytes;
+    private final ReentrantLock outLock = new ReentrantLock();
+    private final ReentrantLock listenLock = new ReentrantLock();
+    private final ReentrantLock dispatchLock = new ReentrantLock();
+    private final ExecutorService serverListener;
+    private DatagramChannel datagramChannel;
+    private DatagramSession datagramSession;
+    private Delivery[] deliveries = Delivery.streamOnly();
+    private ExecutorService datagramListener;
+    private ScheduledExecutorService datagramTicker;
     private boolean isRunning;
-    private final Map<Byte, Consumer<Client>> serverDataActions = new HashMap<>() {{
-        put(Server.ClientAccepted, client -> {});
-    }};
+    private final Map<Byte, Delivery> serverDeliveries = new HashMap<>();
+    /** Indexed by unsigned identifier. */
+    @SuppressWarnings("unchecked")
+    private final Consumer<Client>[] serverDataActions = (Consumer<Client>[]) new Consumer<?>[256];
 
     public Client(ClientConfig clientConfig, SecureServerConfig secureServerConfig) throws IOException, GeneralSecurityException {
         Log.info("trying to connect...");
-        socket = SecureSocketFactory.getSocket(clientConfig, secureServerConfig);
+        executionMode = clientConfig.executionMode();
+        flushPolicy = clientConfig.flushPolicy();
+        serverListener = executionMode.newLoopExecutor();
+
+        if (clientConfig.transportType() == TransportType.Reactor) {
+            SSLContext sslContext = SecureEngineFactory.getContext(secureServerConfig);
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(clientConfig.host(), clientConfig.port()));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Log.info("somehow connected. starting reactor...");
+
+            reactor = new Reactor();
+            reactorThread = Executors.newSingleThreadExecutor();
+            reactorThread.submit(reactor);
+
+            // the reactor only serves this connection, so delegated handshake tasks can run on it directly.
+            connection = new SecureChannelConnection(
+                    channel,
+                    reactor,
+                    SecureEngineFactory.getClientEngine(clientConfig, sslContext),
+                    SecureEngineFactory.getBufferPool(sslContext),
+                    Runnable::run
+            );
+            ChannelInputStream channelInput = new ChannelInputStream(() -> {});
+            connection.setInboundHandler(channelInput);
+            connection.register();
+            socket = connection.socket();
 
-//        SSLParameters parameters = new SSLParameters();
-//        parameters.setEndpointIdentificationAlgorithm("HTTPS");
-//        socket.setSSLParameters(parameters);
+            out = new ChannelOutputStream(connection);
+            frameReader = new FrameReader(channelInput);
+        } else {
+            SSLSocket sslSocket = SecureSocketFactory.getSocket(clientConfig, secureServerConfig);
+            socket = sslSocket;
+            connection = null;
+            reactor = null;
+            reactorThread = null;
 
-        Log.info("somehow connected. starting handshake...");
-        socket.startHandshake();
-        Log.info("handshake started. get out");
+//            SSLParameters parameters = new SSLParameters();
+//            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+//            sslSocket.setSSLParameters(parameters);
+
+            Log.info("somehow connected. starting handshake...");
+            sslSocket.startHandshake();
+            Log.info("handshake started. get out");
+
+            out = new BufferedOutputStream(socket.getOutputStream(), OutputBufferSize);
+            frameReader = new FrameReader(new BufferedInputStream(socket.getInputStream()));
+        }
 
-        out = new ObjectOutputStream(socket.getOutputStream());
-        Log.info("get in");
-        in = new ObjectInputStream(socket.getInputStream());
-        Log.info("flush");
-        out.flush();
         Log.info("and last but not least, read connection status.");
-        byte connectionStatus = in.readByte();
-        if (connectionStatus != Server.ClientAccepted) {
-            socket.close();
-            throw new IOException("Bad connection status: " + connectionStatus);
+        MessageReader accepted = frameReader.next();
+        if (accepted.identifier() != Server.ClientAccepted) {
+            shutdown();
+            throw new IOException("Bad connection status: " + accepted.identifier());
+        }
+
+        if (accepted.readBoolean()) {
+            int datagramPort = accepted.readInt();
+            DatagramCipher datagramCipher = DatagramCipher.read(accepted);
+            Delivery[] declaredDeliveries = Delivery.read(accepted);
+            if (clientConfig.useDatagramChannel()) {
+                deliveries = declaredDeliveries;
+                openDatagramChannel(datagramPort, datagramCipher);
+            }
         }
         Log.info("and that's all there is to it.");
     }
 
+    private void openDatagramChannel(int datagramPort, DatagramCipher datagramCipher) throws IOException {
+        datagramChannel = DatagramChannel.open();
+        datagramChannel.connect(new InetSocketAddress(socket.getInetAddress(), datagramPort));
+        datagramSession = new DatagramSession(datagramCipher, packet -> {
+            try {
+                datagramChannel.write(packet);
+            } catch (PortUnreachableException exception) {
+                Log.debug("Datagram port unreachable: {}", exception.getMessage());
+            }
+        });
+        datagramTicker = Executors.newSingleThreadScheduledExecutor();
+        datagramTicker.scheduleAtFixedRate(this::tickDatagrams, DatagramSession.TickInterval, DatagramSession.TickInterval, TimeUnit.MILLISECONDS);
+
+        // tells the server where to send datagrams. Until it arrives, the server sends them over the connection instead.
+        sendDatagram(message(Server.ClientAccepted));
+        Log.info("datagram channel open on port {}.", datagramPort);
+    }
+
+    public boolean hasDatagramChannel() {
+        return datagramChannel != null;
+    }
+
     public boolean isConnectionClosed() {
-        return socket.isClosed() || socket.isOutputShutdown();
+        return socket.isClosed() || socket.isOutputShutdown() || (connection != null && connection.isClosed());
     }
 
-    public ObjectInputStream in() {
+    /** @return a reader over the payload of the message currently being handled. */
+    public MessageReader in() {
         return in;
     }
 
-    public ObjectOutputStream out() {
-        return out;
+    /**
+     * Blocks until the next message arrives. Only usable before the client starts listening to the server.
+     *
+     * @return a reader over the message's payload.
+     * @throws IOException if the message doesn't have the expected identifier, or couldn't be read.
+     */
+    public MessageReader awaitMessage(byte identifier) throws IOException {
+        if (isRunning) {
+            throw new IllegalStateException("Cannot wait for messages while the client is listening to the server.");
+        }
+
+        in = frameReader.next();
+        if (in.identifier() != identifier) {
+            throw new IOException("Expected message " + identifier + ", but received " + in.identifier() + ".");
+        }
+        return in;
     }
 
     public boolean addServerAction(byte identifier, Consumer<Client> action) {
+        return addServerAction(identifier, Delivery.Stream, action);
+    }
+
+    /**
+     * @param delivery how the server sends the message. Declarations are sent to the server when the client starts
+     *                 listening, so declare every action before calling {@link #run()}.
+     */
+    public boolean addServerAction(byte identifier, Delivery delivery, Consumer<Client> action) {
         if (identifier < 1) {
             throw new IllegalArgumentException("The identifier cannot be less than 1.");
         }
 
-        if (serverDataActions.containsKey(identifier)) {
+        if (serverDataActions[identifier & 0xFF] != null) {
             return false;
         }
 
-        serverDataActions.put(identifier, action);
+        serverDataActions[identifier & 0xFF] = action;
+        serverDeliveries.put(identifier, delivery);
         return true;
     }
 
     public Consumer<Client> replaceClientAction(byte identifier, Consumer<Client> action) {
-        return serverDataActions.put(identifier, action);
+        Consumer<Client> replacedAction = serverDataActions[identifier & 0xFF];
+        serverDataActions[identifier & 0xFF] = action;
+        return replacedAction;
     }
 
     public Consumer<Client> removeClientAction(byte identifier) {
-        return serverDataActions.remove(identifier);
+        serverDeliveries.remove(identifier);
+        Consumer<Client> removedAction = serverDataActions[identifier & 0xFF];
+        serverDataActions[identifier & 0xFF] = null;
+        return removedAction;
     }
 
-    public void send(byte identifier, Object... data) throws IOException {
-        synchronized (out) {
-            out.writeByte(identifier);
-
-            for (Object value : data) {
-                if (value instanceof String s) {
-                    out.writeUTF(s);
-                } else if (value instanceof Integer i) {
-                    out.writeInt(i);
-                } else if (value instanceof Double d) {
-                    out.writeDouble(d);
-                } else if (value instanceof Long l) {
-                    out.writeLong(l);
-                } else if (value instanceof Float f) {
-                    out.writeFloat(f);
-                } else if (value instanceof Byte b) {
-                    out.writeByte(b);
-                } else if (value instanceof Boolean b) {
-                    out.writeBoolean(b);
-                } else if (value instanceof Character c) {
-                    out.writeChar(c);
-                } else if (value instanceof Short s) {
-                    out.writeShort(s);
-                } else if (value instanceof byte[] bytes) {
-                    out.write(bytes);
-                } else {
-                    out.writeObject(value);
-                }
+    /**
+     * Begins a message on the calling thread's reusable writer. Send it with {@link #send(FrameWriter)} before
+     * beginning another message on the same thread.
+     */
+    public FrameWriter message(byte identifier) {
+        return FrameWriter.forCurrentThread().begin(identifier);
+    }
+
+    /**
+     * Sends {@code message} with the delivery the server declared for it. Messages sent over the stream are flushed
+     * once the flush policy's threshold is reached.
+     */
+    public void send(FrameWriter message) throws IOException {
+        Delivery delivery = deliveries[message.identifier() & 0xFF];
+        if (delivery != Delivery.Stream && canSendDatagram(message)) {
+            datagramSession.send(message.finish(), delivery);
+            return;
+        }
+
+        sendStream(message);
+    }
+
+    private void sendStream(FrameWriter message) throws IOException {
+        outLock.lock();
+        try {
+            unflushedBytes += message.writeTo(out);
+            if (unflushedBytes >= flushPolicy.flushThreshold()) {
+                out.flush();
+                unflushedBytes = 0;
             }
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    /** Flushes every message written so far, regardless of the flush policy. */
+    public void flushNow() throws IOException {
+        outLock.lock();
+        try {
+            if (unflushedBytes > 0) {
+                out.flush();
+                unflushedBytes = 0;
+            }
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    /**
+     * Sends {@code message} as an unreliable datagram, regardless of the server's declarations. Without a datagram
+     * channel, or if the message is too big for a datagram, it's sent over the stream instead.
+     */
+    public void sendDatagram(FrameWriter message) throws IOException {
+        if (!canSendDatagram(message)) {
+            sendStream(message);
+            return;
+        }
+
+        datagramSession.send(message.finish(), Delivery.Unreliable);
+    }
+
+    private boolean canSendDatagram(FrameWriter message) {
+        return datagramSession != null && message.size() + Frames.MaxLengthPrefixSize <= DatagramSession.MaxFrameSize;
+    }
+
+    /** @return the round-trip time of the client's datagrams in nanoseconds, or 0 if it isn't known yet. */
+    public long getRoundTripTime() {
+        return datagramSession != null ? datagramSession.getRoundTripTime() : 0;
+    }
 
-            out.flush();
+    private void tickDatagrams() {
+        try {
+            datagramSession.tick();
+        } catch (IOException exception) {
+            Log.debug("Couldn't resend datagrams: {}", exception.getMessage());
         }
     }
 
+    public void send(byte identifier, Object... data) throws IOException {
+        FrameWriter message = message(identifier);
+        for (Object value : data) {
+            message.writeValue(value);
+        }
+
+        send(message);
+    }
+
     public void disconnect(byte identifier, String reason) {
         if (isConnectionClosed()) {
             return;
         }
 
         try {
-            out.writeByte(identifier);
-            out.writeUTF(reason);
-            out.flush();
+            send(identifier, reason);
+            flushNow();
             serverListener.shutdownNow();
             shutdown();
         } catch (IOException exception) {
@@ -138,6 +334,16 @@ public class Client implements Runnable {
     }
 
     public void shutdown() {
+        // the listener loop ends once the connection closes, which frees its thread.
+        serverListener.shutdown();
+        closeDatagramChannel();
+        if (connection != null) {
+            connection.close();
+            reactor.shutdown();
+            reactorThread.shutdown();
+            return;
+        }
+
         try {
             socket.close();
         } catch (IOException exception) {
@@ -145,40 +351,120 @@ public class Client implements Runnable {
         }
     }
 
+    private void closeDatagramChannel() {
+        if (datagramListener != null) {
+            datagramListener.shutdownNow();
+        }
+        if (datagramTicker != null) {
+            datagramTicker.shutdownNow();
+        }
+        if (datagramChannel == null) {
+            return;
+        }
+
+        try {
+            datagramChannel.close();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
     @Override
     public void run() {
         if (isRunning) {
             Log.warn(this.getClass(), "Client already listening to a server.");
             return;
         }
-        serverListener = Executors.newSingleThreadExecutor();
         isRunning = true;
 
         serverListener.submit(this::listen);
+        if (datagramChannel != null) {
+            datagramListener = executionMode.newLoopExecutor();
+            datagramListener.submit(this::listenDatagrams);
+            sendDeliveries();
+        }
     }
 
-    synchronized void listen() {
-        while (!socket.isClosed()) {
-            try {
-                byte identifier = in.readByte();
-                serverDataActions.getOrDefault(
-                        identifier,
-                        client -> Log.warn("Invalid server identifier: {}", identifier)
-                ).accept(this);
-            } catch (IOException exception) {
+    /** Replies to being accepted with the deliveries declared by the client's server actions. */
+    private void sendDeliveries() {
+        try {
+            FrameWriter reply = message(Server.ClientAccepted);
+            Delivery.write(reply, serverDeliveries);
+            sendStream(reply);
+            flushNow();
+        } catch (IOException exception) {
+            Log.warn("Couldn't send delivery declarations: {}", exception.getMessage());
+        }
+    }
+
+    void listen() {
+        listenLock.lock();
+        try {
+            while (!socket.isClosed()) {
+                MessageReader message;
                 try {
-                    if (in.read() == -1) {
+                    message = frameReader.next();
+                } catch (IOException exception) {
+                    if (exception instanceof EOFException) {
                         Log.debug("Connection closed.");
-                        shutdown();
-                        break;
+                    } else {
+                        Log.error("", exception);
                     }
-                } catch (IOException exception1) {
-                    Log.error("", exception);
-                    Log.error("", exception1);
+                    shutdown();
+                    break;
                 }
-                shutdown();
+
+                handle(message);
+            }
+        } finally {
+            listenLock.unlock();
+        }
+    }
+
+    private void listenDatagrams() {
+        ByteBuffer packet = ByteBuffer.allocate(DatagramCipher.MaxDatagramSize);
+        MessageReader datagramReader = new MessageReader();
+        List<ByteBuffer> frames = new ArrayList<>();
+
+        while (datagramChannel.isOpen()) {
+            packet.clear();
+            try {
+                datagramChannel.receive(packet);
+            } catch (ClosedChannelException exception) {
                 break;
+            } catch (IOException exception) {
+                Log.debug("Couldn't receive datagram: {}", exception.getMessage());
+                continue;
             }
+
+            if (!datagramSession.receive(packet.flip(), frames)) {
+                continue;
+            }
+
+            for (ByteBuffer frame : frames) {
+                try {
+                    handle(datagramReader.wrapFrame(frame));
+                } catch (IOException exception) {
+                    Log.debug("Bad datagram: {}", exception.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Messages from the connection and from datagrams are handled one at a time. */
+    private void handle(MessageReader message) {
+        dispatchLock.lock();
+        try {
+            in = message;
+            Consumer<Client> serverDataAction = serverDataActions[message.identifier() & 0xFF];
+            if (serverDataAction == null) {
+                Log.warn("Invalid server identifier: {}", message.identifier());
+                return;
+            }
+
+            serverDataAction.accept(this);
+        } finally {
+            dispatchLock.unlock();
         }
     }
 }
@@ -1,4 +1,32 @@
 package network.client;
 
-public record ClientConfig(String host, int port) {
+import network.message.FlushPolicy;
+import network.message.FrameWriter;
+import network.transport.ExecutionMode;
+import network.transport.TransportType;
+
+public record ClientConfig(String host, int port, TransportType transportType, ExecutionMode executionMode, FlushPolicy flushPolicy,
+                           boolean useDatagramChannel) {
+
+    public ClientConfig(String host, int port) {
+        this(host, port, TransportType.Blocking, ExecutionMode.Platform, FlushPolicy.Immediate, false);
+    }
+
+    public ClientConfig withTransport(TransportType transportType) {
+        return new ClientConfig(host, port, transportType, executionMode, flushPolicy, useDatagramChannel);
+    }
+
+    public ClientConfig withExecutionMode(ExecutionMode executionMode) {
+        return new ClientConfig(host, port, transportType, executionMode, flushPolicy, useDatagramChannel);
+    }
+
+    /** With a batched policy, {@link Client#flushNow()} should be called at the end of every update. */
+    public ClientConfig withFlushPolicy(FlushPolicy flushPolicy) {
+        return new ClientConfig(host, port, transportType, executionMode, flushPolicy, useDatagramChannel);
+    }
+
+    /** Uses the server's datagram channel, if it has one, for messages sent with {@link Client#sendDatagram(FrameWriter)}. */
+    public ClientConfig withDatagramChannel(boolean useDatagramChannel) {
+        return new ClientConfig(host, port, transportType, executionMode, flushPolicy, useDatagramChannel);
+    }
 }
@@ -0,0 +1,31 @@
+package network.message;
+
+import java.io.IOException;
+
+/** Reads values written by a {@link BitWriter}. */
+public final class BitReader {
+
+    private final MessageReader message;
+    private long scratch;
+    private int scratchBits;
+
+    public BitReader(MessageReader message) {
+        this.message = message;
+    }
+
+    /** @return the next {@code bits} bits, as an unsigned value. */
+    public int read(int bits) throws IOException {
+        BitWriter.checkBits(bits);
+        while (scratchBits < bits) {
+            scratch = (scratch << Byte.SIZE) | message.readUnsignedByte();
+            scratchBits += Byte.SIZE;
+        }
+
+        scratchBits -= bits;
+        return (int) ((scratch >>> scratchBits) & ((1L << bits) - 1));
+    }
+
+    public boolean readBoolean() throws IOException {
+        return read(1) != 0;
+    }
+}
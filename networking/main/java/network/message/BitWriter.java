@@ -0,0 +1,49 @@
+package network.message;
+
+/** Packs values narrower than a byte, or spanning several, into a frame. Values are written most significant bit first. */
+public final class BitWriter {
+
+    private final FrameWriter message;
+    private long scratch;
+    private int scratchBits;
+
+    public BitWriter(FrameWriter message) {
+        this.message = message;
+    }
+
+    /** Writes the lowest {@code bits} bits of {@code value}. */
+    public BitWriter write(int value, int bits) {
+        checkBits(bits);
+        scratch = (scratch << bits) | (value & ((1L << bits) - 1));
+        scratchBits += bits;
+        while (scratchBits >= Byte.SIZE) {
+            scratchBits -= Byte.SIZE;
+            message.writeByte((int) (scratch >>> scratchBits));
+        }
+        return this;
+    }
+
+    public BitWriter writeBoolean(boolean value) {
+        return write(value ? 1 : 0, 1);
+    }
+
+    /**
+     * Pads the last partly written byte with zeros.
+     *
+     * @return the frame being written to.
+     */
+    public FrameWriter finish() {
+        if (scratchBits > 0) {
+            message.writeByte((int) (scratch << (Byte.SIZE - scratchBits)));
+        }
+        scratch = 0L;
+        scratchBits = 0;
+        return message;
+    }
+
+    static void checkBits(int bits) {
+        if (bits < 1 || bits > Integer.SIZE) {
+            throw new IllegalArgumentException("Bit count " + bits + " is not between 1 and " + Integer.SIZE + ".");
+        }
+    }
+}
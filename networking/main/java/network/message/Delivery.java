@@ -0,0 +1,73 @@
+package network.message;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * How a kind of message is delivered. Receivers declare the delivery of each message they handle, and senders route
+ * messages by the receiver's declarations. Until a connection's datagram channel is usable, every message is sent
+ * over its stream.
+ */
+public enum Delivery {
+    /** Sent over the connection's stream, in order with every other stream message. */
+    Stream,
+    /** Sent as a datagram, which may be lost or arrive out of order. For state that is sent again regularly. */
+    Unreliable,
+    /** Sent as a datagram and resent until acknowledged, but handled as soon as it arrives. */
+    ReliableUnordered,
+    /**
+     * Sent as a datagram and resent until acknowledged, and handled in order with the other reliable-ordered
+     * messages. A lost datagram only holds back reliable-ordered messages, never other datagrams or the stream.
+     */
+    ReliableOrdered;
+
+    private static final Delivery[] Deliveries = values();
+
+    /** Writes every declaration that isn't {@link #Stream}. */
+    public static void write(FrameWriter message, Map<Byte, Delivery> deliveries) {
+        int count = 0;
+        for (Delivery delivery : deliveries.values()) {
+            if (delivery != Stream) {
+                count++;
+            }
+        }
+
+        message.writeShort(count);
+        for (Map.Entry<Byte, Delivery> declaration : deliveries.entrySet()) {
+            if (declaration.getValue() != Stream) {
+                message.writeByte(declaration.getKey()).writeByte(declaration.getValue().ordinal());
+            }
+        }
+    }
+
+    /** @return declarations for every message identifier, indexed by unsigned identifier, that are all {@link #Stream}. */
+    public static Delivery[] streamOnly() {
+        Delivery[] deliveries = new Delivery[256];
+        Arrays.fill(deliveries, Stream);
+        return deliveries;
+    }
+
+    /** @return the declarations written by {@link #write(FrameWriter, Map)}, indexed by unsigned message identifier. */
+    public static Delivery[] read(DataInput input) throws IOException {
+        Delivery[] deliveries = streamOnly();
+
+        int count = input.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int identifier = input.readUnsignedByte();
+            int delivery = input.readUnsignedByte();
+            if (delivery >= Deliveries.length) {
+                throw new IOException("Unknown delivery " + delivery + " for message " + (byte) identifier + ".");
+            }
+            deliveries[identifier] = Deliveries[delivery];
+        }
+
+        return deliveries;
+    }
+
+    /** @return the delivery with the given ordinal, or {@code null} if there isn't one. */
+    public static Delivery of(int ordinal) {
+        return ordinal >= 0 && ordinal < Deliveries.length ? Deliveries[ordinal] : null;
+    }
+}
@@ -0,0 +1,30 @@
+package network.message;
+
+/**
+ * When written messages are flushed to the network. {@link #Immediate} flushes after every message. Batched policies
+ * hold messages until {@code flushThreshold} bytes are waiting, or until the owner flushes explicitly (e.g. at the end
+ * of a tick), so that several messages share a TLS record and TCP segment.
+ */
+public record FlushPolicy(int flushThreshold) {
+
+    /** Roughly one TCP segment's worth of payload. */
+    public static final int DefaultFlushThreshold = 1400;
+    public static final FlushPolicy Immediate = new FlushPolicy(0);
+
+    public FlushPolicy {
+        if (flushThreshold < 0) {
+            throw new IllegalArgumentException("The flush threshold cannot be less than 0.");
+        }
+    }
+
+    public static FlushPolicy batched(int flushThreshold) {
+        if (flushThreshold < 1) {
+            throw new IllegalArgumentException("The flush threshold of a batched policy cannot be less than 1.");
+        }
+        return new FlushPolicy(flushThreshold);
+    }
+
+    public boolean isBatched() {
+        return flushThreshold > 0;
+    }
+}
@@ -0,0 +1,72 @@
+package network.message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A fully encoded frame, which can be handed to any number of connections without re-encoding. Its bytes never change
+ * while it is referenced; frames from a {@link FramePool} are only reused once {@link #release() released}.
+ */
+public final class Frame {
+
+    public static final int NoCoalesceKey = Integer.MIN_VALUE;
+
+    private final byte[] bytes;
+    private final FramePool pool;
+    private int size;
+    private byte identifier;
+    private int coalesceKey;
+
+    Frame(byte[] bytes, int size, byte identifier, int coalesceKey, FramePool pool) {
+        this.bytes = bytes;
+        this.size = size;
+        this.identifier = identifier;
+        this.coalesceKey = coalesceKey;
+        this.pool = pool;
+    }
+
+    public byte identifier() {
+        return identifier;
+    }
+
+    /** @return the key set with {@link FrameWriter#coalesceBy(int)}, or {@link #NoCoalesceKey}. */
+    public int coalesceKey() {
+        return coalesceKey;
+    }
+
+    /** @return whether this frame carries the same kind of state as {@code other}, so only the newer one matters. */
+    public boolean supersedes(Frame other) {
+        return coalesceKey != NoCoalesceKey && coalesceKey == other.coalesceKey && identifier == other.identifier;
+    }
+
+    /** @return the size of the frame in bytes, including its length prefix. */
+    public int size() {
+        return size;
+    }
+
+    public void writeTo(OutputStream output) throws IOException {
+        output.write(bytes, 0, size);
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(bytes, 0, size);
+    }
+
+    /** Returns a pooled frame to its pool once it has been written. Does nothing for frames without a pool. */
+    public void release() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    void set(int size, byte identifier, int coalesceKey) {
+        this.size = size;
+        this.identifier = identifier;
+        this.coalesceKey = coalesceKey;
+    }
+}
@@ -0,0 +1,232 @@
+package network.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+import network.transport.InboundHandler;
+
+/**
+ * Splits bytes from a reactor into whole frames without blocking. Completed frames are queued for another thread to
+ * {@link #poll()}, and {@code frameListener} runs after each batch of frames, and on close.
+ * <p>
+ * Frames sit back to back in the stream, so the whole frames of each read are copied as one run into batch buffers the
+ * decoder takes back once every frame in them has been polled. Receiving a message doesn't allocate unless the poller
+ * falls more than {@link #MaxPooledBatches} batches behind, or the frame doesn't fit in a batch.
+ */
+public class FrameDecoder implements InboundHandler {
+
+    private static final int InitialBufferSize = 256;
+    private static final int BatchSize = 4096;
+    private static final int MaxPooledBatches = 16;
+
+    private final Runnable frameListener;
+    private final MessageReader message;
+
+    /** Guards the queued and pooled batches, between the reactor thread and the polling thread. */
+    private final ReentrantLock batchesLock = new ReentrantLock();
+    /** Batches of whole frames, length prefixes included, in read mode. */
+    private final ArrayDeque<ByteBuffer> batches = new ArrayDeque<>();
+    /** Cleared batches of {@link #BatchSize} bytes, for the next reads. */
+    private final ArrayDeque<ByteBuffer> freeBatches = new ArrayDeque<>();
+    /** Frames in {@link #batches} and {@link #polledBatch} that haven't been polled yet. */
+    private int queuedFrames;
+
+    /** The batch {@link #poll()} hands out frames from. Only touched by the polling thread. */
+    private ByteBuffer polledBatch;
+    private int polledBatchEnd;
+    private int polledFrameEnd;
+
+    /** Bytes of an incomplete frame, in fill mode. Only touched by the reactor thread. */
+    private ByteBuffer partialFrame;
+    /** The batch the current read's frames are being copied into, in fill mode. Only touched by the reactor thread. */
+    private ByteBuffer fillingBatch;
+    private volatile IOException closeCause;
+    private volatile boolean isClosed;
+
+    public FrameDecoder(Runnable frameListener) {
+        this.frameListener = frameListener;
+        this.message = new MessageReader();
+        this.partialFrame = ByteBuffer.allocate(InitialBufferSize);
+    }
+
+    /** @return whether the connection has closed, and every frame received before that has been polled. */
+    public boolean isClosed() {
+        return isClosed && !hasFrames();
+    }
+
+    public IOException getCloseCause() {
+        return closeCause;
+    }
+
+    public boolean hasFrames() {
+        batchesLock.lock();
+        try {
+            return queuedFrames > 0;
+        } finally {
+            batchesLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next received frame. Should only be called from one thread at a time.
+     *
+     * @return a reader over the frame, which stays valid until the next call, or {@code null} if there are no frames.
+     */
+    public MessageReader poll() {
+        batchesLock.lock();
+        try {
+            if (queuedFrames == 0) {
+                return null;
+            }
+            queuedFrames--;
+
+            if (polledBatch == null || polledFrameEnd == polledBatchEnd) {
+                if (polledBatch != null) {
+                    release(polledBatch);
+                }
+                polledBatch = batches.poll();
+                polledFrameEnd = polledBatch.position();
+                polledBatchEnd = polledBatch.limit();
+            }
+        } finally {
+            batchesLock.unlock();
+        }
+
+        // the frame's size was checked as it was decoded.
+        polledBatch.limit(polledBatchEnd).position(polledFrameEnd);
+        int frameSize = Frames.getLengthPrefix(polledBatch);
+        polledFrameEnd = polledBatch.position() + frameSize;
+        polledBatch.limit(polledFrameEnd);
+        return message.wrap(polledBatch);
+    }
+
+    @Override
+    public void onData(ByteBuffer data) throws IOException {
+        int newFrames;
+
+        if (partialFrame.position() > 0) {
+            ensureCapacity(data.remaining());
+            partialFrame.put(data).flip();
+            newFrames = decodeFrames(partialFrame);
+            partialFrame.compact();
+        } else {
+            newFrames = decodeFrames(data);
+            if (data.hasRemaining()) {
+                ensureCapacity(data.remaining());
+                partialFrame.put(data);
+            }
+        }
+
+        if (newFrames > 0) {
+            frameListener.run();
+        }
+    }
+
+    @Override
+    public void onClose(IOException cause) {
+        closeCause = cause;
+        isClosed = true;
+        frameListener.run();
+    }
+
+    /** @return how many whole frames were taken from {@code data}. */
+    private int decodeFrames(ByteBuffer data) throws IOException {
+        int newFrames = 0;
+
+        try {
+            while (data.hasRemaining()) {
+                int frameStart = data.position();
+                int frameSize = Frames.getLengthPrefix(data);
+                if (frameSize == -1) {
+                    break;
+                }
+                if (frameSize < 1 || frameSize > Frames.MaxFrameSize) {
+                    throw new IOException("Invalid frame size: " + frameSize);
+                }
+                if (data.remaining() < frameSize) {
+                    data.position(frameStart);
+                    break;
+                }
+
+                int frameEnd = data.position() + frameSize;
+                data.position(frameStart);
+                copyFrame(data, frameEnd);
+                newFrames++;
+            }
+        } finally {
+            if (fillingBatch != null) {
+                queue(fillingBatch, newFrames);
+                fillingBatch = null;
+            }
+        }
+
+        return newFrames;
+    }
+
+    /** Copies the frame from {@code data}'s position to {@code frameEnd} into the filling batch. */
+    private void copyFrame(ByteBuffer data, int frameEnd) {
+        int frameLength = frameEnd - data.position();
+        if (fillingBatch != null && fillingBatch.remaining() < frameLength) {
+            queue(fillingBatch, 0);
+            fillingBatch = null;
+        }
+        if (fillingBatch == null) {
+            fillingBatch = acquire(frameLength);
+        }
+
+        int dataLimit = data.limit();
+        data.limit(frameEnd);
+        fillingBatch.put(data);
+        data.limit(dataLimit);
+    }
+
+    /**
+     * Queues {@code batch} for polling. Frames are counted once the read's last batch is queued, so a batch can be
+     * queued ahead of its frames but never the other way around.
+     */
+    private void queue(ByteBuffer batch, int newFrames) {
+        batchesLock.lock();
+        try {
+            batches.add(batch.flip());
+            queuedFrames += newFrames;
+        } finally {
+            batchesLock.unlock();
+        }
+    }
+
+    /** Takes a batch for at least {@code frameLength} bytes. */
+    private ByteBuffer acquire(int frameLength) {
+        if (frameLength > BatchSize) {
+            return ByteBuffer.allocate(frameLength);
+        }
+
+        ByteBuffer batch;
+        batchesLock.lock();
+        try {
+            batch = freeBatches.poll();
+        } finally {
+            batchesLock.unlock();
+        }
+        return batch != null ? batch : ByteBuffer.allocate(BatchSize);
+    }
+
+    /** Keeps {@code batch} for a later read, if it's batch-size and the pool has room. Callers must hold the lock. */
+    private void release(ByteBuffer batch) {
+        if (batch.capacity() == BatchSize && freeBatches.size() < MaxPooledBatches) {
+            freeBatches.add(batch.clear());
+        }
+    }
+
+    private void ensureCapacity(int additionalBytes) {
+        if (partialFrame.remaining() >= additionalBytes) {
+            return;
+        }
+
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(partialFrame.capacity() * 2, partialFrame.position() + additionalBytes));
+        partialFrame.flip();
+        grown.put(partialFrame);
+        partialFrame = grown;
+    }
+}
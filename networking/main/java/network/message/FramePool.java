@@ -0,0 +1,46 @@
+package network.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reuses the frames that queue a single connection's messages, so queueing a message doesn't allocate. Each connection
+ * has its own pool, so the pool's lock is only ever shared by the thread sending to the connection and its writer.
+ */
+public class FramePool {
+
+    public static final int PooledFrameSize = 256;
+
+    private final ArrayBlockingQueue<Frame> frames;
+
+    public FramePool(int maxPooledFrames) {
+        this.frames = new ArrayBlockingQueue<>(maxPooledFrames);
+    }
+
+    /** Completes the writer's current frame, and copies it into a frame from the pool. */
+    public Frame copyOf(FrameWriter writer) throws IOException {
+        ByteBuffer encoded = writer.finish();
+        int size = encoded.remaining();
+        byte identifier = writer.identifier();
+
+        if (size > PooledFrameSize) {
+            byte[] bytes = new byte[size];
+            encoded.get(bytes);
+            return new Frame(bytes, size, identifier, writer.coalesceKey(), null);
+        }
+
+        Frame frame = frames.poll();
+        if (frame == null) {
+            frame = new Frame(new byte[PooledFrameSize], 0, identifier, Frame.NoCoalesceKey, this);
+        }
+
+        encoded.get(frame.bytes(), 0, size);
+        frame.set(size, identifier, writer.coalesceKey());
+        return frame;
+    }
+
+    void release(Frame frame) {
+        frames.offer(frame);
+    }
+}
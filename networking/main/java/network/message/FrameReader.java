@@ -0,0 +1,71 @@
+package network.message;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/** Reads whole frames from a blocking stream. */
+public class FrameReader {
+
+    private static final int InitialBufferSize = 256;
+
+    private final InputStream input;
+    private final MessageReader message;
+    private byte[] buffer;
+    private ByteBuffer frame;
+
+    public FrameReader(InputStream input) {
+        this.input = input;
+        this.message = new MessageReader();
+        this.buffer = new byte[InitialBufferSize];
+        this.frame = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Blocks until a whole frame has been read.
+     *
+     * @return a reader over the frame, which stays valid until the next call.
+     * @throws EOFException if the stream ends.
+     */
+    public MessageReader next() throws IOException {
+        int frameSize = readLengthPrefix();
+        if (frameSize < 1 || frameSize > Frames.MaxFrameSize) {
+            throw new IOException("Invalid frame size: " + frameSize);
+        }
+
+        if (buffer.length < frameSize) {
+            buffer = new byte[Math.max(frameSize, buffer.length * 2)];
+            frame = ByteBuffer.wrap(buffer);
+        }
+
+        int read = 0;
+        while (read < frameSize) {
+            int count = input.read(buffer, read, frameSize - read);
+            if (count == -1) {
+                throw new EOFException("Stream ended " + (frameSize - read) + " bytes before the end of the frame.");
+            }
+            read += count;
+        }
+
+        frame.clear().limit(frameSize);
+        return message.wrap(frame);
+    }
+
+    private int readLengthPrefix() throws IOException {
+        int frameSize = 0;
+        for (int i = 0; i < Frames.MaxLengthPrefixSize; i++) {
+            int value = input.read();
+            if (value == -1) {
+                throw new EOFException(i == 0 ? "Stream ended." : "Stream ended inside a frame's length prefix.");
+            }
+
+            frameSize |= (value & 0x7F) << (7 * i);
+            if ((value & 0x80) == 0) {
+                return frameSize;
+            }
+        }
+
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,224 @@
+package network.message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes frames into a reusable buffer. Space for the longest length prefix is reserved ahead of the identifier, so
+ * the prefix can be filled in once the payload size is known without moving the payload.
+ */
+public class FrameWriter {
+
+    private static final int InitialBufferSize = 256;
+    private static final ThreadLocal<FrameWriter> ThreadWriters = ThreadLocal.withInitial(FrameWriter::new);
+
+    private ByteBuffer buffer;
+    private int coalesceKey;
+
+    public FrameWriter() {
+        this.buffer = ByteBuffer.allocate(InitialBufferSize);
+    }
+
+    /**
+     * Gets the calling thread's writer. Every message built on a thread shares this writer, so a message must be sent
+     * before the thread begins another one.
+     */
+    public static FrameWriter forCurrentThread() {
+        return ThreadWriters.get();
+    }
+
+    public FrameWriter begin(byte identifier) {
+        buffer.clear().position(Frames.MaxLengthPrefixSize);
+        buffer.put(identifier);
+        coalesceKey = Frame.NoCoalesceKey;
+        return this;
+    }
+
+    /**
+     * Marks the message as state that a newer message with the same identifier and {@code key} completely replaces,
+     * e.g. a player's position keyed by player number. Queues may then drop the older message when a client falls
+     * behind.
+     */
+    public FrameWriter coalesceBy(int key) {
+        coalesceKey = key;
+        return this;
+    }
+
+    public FrameWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    public FrameWriter writeByte(int value) {
+        ensureCapacity(Byte.BYTES);
+        buffer.put((byte) value);
+        return this;
+    }
+
+    public FrameWriter writeShort(int value) {
+        ensureCapacity(Short.BYTES);
+        buffer.putShort((short) value);
+        return this;
+    }
+
+    public FrameWriter writeChar(int value) {
+        ensureCapacity(Character.BYTES);
+        buffer.putChar((char) value);
+        return this;
+    }
+
+    public FrameWriter writeInt(int value) {
+        ensureCapacity(Integer.BYTES);
+        buffer.putInt(value);
+        return this;
+    }
+
+    public FrameWriter writeLong(long value) {
+        ensureCapacity(Long.BYTES);
+        buffer.putLong(value);
+        return this;
+    }
+
+    public FrameWriter writeFloat(float value) {
+        ensureCapacity(Float.BYTES);
+        buffer.putFloat(value);
+        return this;
+    }
+
+    public FrameWriter writeDouble(double value) {
+        ensureCapacity(Double.BYTES);
+        buffer.putDouble(value);
+        return this;
+    }
+
+    /**
+     * Makes room for a fixed-size layout of {@code size} bytes, so its fields can be put straight into the returned
+     * buffer without a capacity check per field. Put at most {@code size} bytes, and don't keep the buffer past that.
+     */
+    public ByteBuffer fixed(int size) {
+        ensureCapacity(size);
+        return buffer;
+    }
+
+    public FrameWriter write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+
+    /** Writes {@code value} in the modified UTF-8 format read by {@link MessageReader#readUTF()}. */
+    public FrameWriter writeUTF(String value) throws UTFDataFormatException {
+        int utfLength = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            utfLength += (c >= 0x0001 && c <= 0x007F) ? 1 : (c > 0x07FF ? 3 : 2);
+        }
+        if (utfLength > 0xFFFF) {
+            throw new UTFDataFormatException("Encoded string is too long: " + utfLength + " bytes");
+        }
+
+        ensureCapacity(Short.BYTES + utfLength);
+        buffer.putShort((short) utfLength);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                buffer.put((byte) c);
+            } else if (c > 0x07FF) {
+                buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return this;
+    }
+
+    /** Writes a value of one of the types accepted by the {@code send} methods. */
+    public FrameWriter writeValue(Object value) throws UTFDataFormatException {
+        if (value instanceof String s) {
+            return writeUTF(s);
+        } else if (value instanceof Integer i) {
+            return writeInt(i);
+        } else if (value instanceof Double d) {
+            return writeDouble(d);
+        } else if (value instanceof Long l) {
+            return writeLong(l);
+        } else if (value instanceof Float f) {
+            return writeFloat(f);
+        } else if (value instanceof Byte b) {
+            return writeByte(b);
+        } else if (value instanceof Boolean b) {
+            return writeBoolean(b);
+        } else if (value instanceof Character c) {
+            return writeChar(c);
+        } else if (value instanceof Short s) {
+            return writeShort(s);
+        } else if (value instanceof byte[] bytes) {
+            return write(bytes);
+        }
+
+        throw new IllegalArgumentException("Cannot write value of type " + (value == null ? "null" : value.getClass().getName()) + ".");
+    }
+
+    /** @return the size of the current frame so far, excluding its length prefix. */
+    public int size() {
+        return buffer.position() - Frames.MaxLengthPrefixSize;
+    }
+
+    /**
+     * Completes the current frame.
+     *
+     * @return the buffer, positioned at the start of the frame's length prefix and limited to its end.
+     */
+    public ByteBuffer finish() throws IOException {
+        int frameSize = size();
+        if (frameSize > Frames.MaxFrameSize) {
+            throw new IOException("Frame size " + frameSize + " exceeds the maximum of " + Frames.MaxFrameSize + ".");
+        }
+
+        int frameStart = Frames.MaxLengthPrefixSize - Frames.lengthPrefixSize(frameSize);
+        Frames.putLengthPrefix(buffer, frameStart, frameSize);
+        return buffer.limit(buffer.position()).position(frameStart);
+    }
+
+    /** Completes the current frame, and copies it into a {@link Frame} that can be sent to several connections. */
+    public Frame toFrame() throws IOException {
+        ByteBuffer frame = finish();
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        return new Frame(bytes, bytes.length, identifier(), coalesceKey, null);
+    }
+
+    /**
+     * Completes the current frame, and writes it to {@code output} in a single call.
+     *
+     * @return the size of the frame in bytes.
+     */
+    public int writeTo(OutputStream output) throws IOException {
+        ByteBuffer frame = finish();
+        output.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        return frame.remaining();
+    }
+
+    public byte identifier() {
+        return buffer.get(Frames.MaxLengthPrefixSize);
+    }
+
+    int coalesceKey() {
+        return coalesceKey;
+    }
+
+    private void ensureCapacity(int additionalBytes) {
+        if (buffer.remaining() >= additionalBytes) {
+            return;
+        }
+
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + additionalBytes));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,74 @@
+package network.message;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame layout shared by every transport: a varint length prefix, followed by that many bytes holding a one-byte
+ * message identifier and the message payload.
+ */
+public final class Frames {
+
+    public static final int MaxFrameSize = 0xFFFF;
+    public static final int MaxLengthPrefixSize = 3;
+
+    private Frames() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static int lengthPrefixSize(int frameSize) {
+        if (frameSize < 0x80) {
+            return 1;
+        }
+        return frameSize < 0x4000 ? 2 : 3;
+    }
+
+    public static void putLengthPrefix(ByteBuffer buffer, int index, int frameSize) {
+        while (frameSize >= 0x80) {
+            buffer.put(index++, (byte) ((frameSize & 0x7F) | 0x80));
+            frameSize >>>= 7;
+        }
+        buffer.put(index, (byte) frameSize);
+    }
+
+    /**
+     * Splits the next whole frame, including its length prefix, off the front of {@code buffer}.
+     *
+     * @return the frame, or {@code null} if {@code buffer} doesn't start with a whole frame.
+     */
+    public static ByteBuffer nextFrame(ByteBuffer buffer) {
+        int frameStart = buffer.position();
+        int frameSize = getLengthPrefix(buffer);
+        if (frameSize < 1 || frameSize > buffer.remaining()) {
+            buffer.position(frameStart);
+            return null;
+        }
+
+        int frameEnd = buffer.position() + frameSize;
+        ByteBuffer frame = buffer.duplicate().limit(frameEnd).position(frameStart);
+        buffer.position(frameEnd);
+        return frame;
+    }
+
+    /**
+     * Reads a length prefix from the start of {@code buffer}, advancing it only if the whole prefix is available.
+     *
+     * @return the frame size, or -1 if more bytes are needed.
+     */
+    static int getLengthPrefix(ByteBuffer buffer) {
+        int frameSize = 0;
+        for (int i = 0; i < MaxLengthPrefixSize; i++) {
+            if (buffer.remaining() <= i) {
+                return -1;
+            }
+
+            byte value = buffer.get(buffer.position() + i);
+            frameSize |= (value & 0x7F) << (7 * i);
+            if (value >= 0) {
+                buffer.position(buffer.position() + i + 1);
+                return frameSize;
+            }
+        }
+
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,172 @@
+package network.message;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** Reads the payload of a single received frame. Reads past the end of the frame fail with an {@link EOFException}. */
+public class MessageReader implements DataInput {
+
+    private ByteBuffer frame = ByteBuffer.allocate(0);
+    private byte identifier;
+
+    /** Reads the identifier from the start of {@code frame}, leaving the reader positioned at its payload. */
+    MessageReader wrap(ByteBuffer frame) {
+        identifier = frame.get();
+        this.frame = frame;
+        return this;
+    }
+
+    /**
+     * Reads a whole frame, including its length prefix, that was received on its own rather than from a stream, such as
+     * a datagram.
+     *
+     * @throws IOException if the length prefix doesn't match the size of {@code frame}.
+     */
+    public MessageReader wrapFrame(ByteBuffer frame) throws IOException {
+        int frameSize = Frames.getLengthPrefix(frame);
+        if (frameSize < 1 || frameSize != frame.remaining()) {
+            throw new IOException("Frame of " + frame.remaining() + " bytes has a bad length prefix.");
+        }
+
+        return wrap(frame);
+    }
+
+    public byte identifier() {
+        return identifier;
+    }
+
+    public int remaining() {
+        return frame.remaining();
+    }
+
+    public void skipRemaining() {
+        frame.position(frame.limit());
+    }
+
+    /**
+     * Checks once that a fixed-size layout of {@code size} bytes remains, so its fields can be read straight from the
+     * returned frame without a check per field. The frame is only valid until the next message is read.
+     */
+    public ByteBuffer fixed(int size) throws EOFException {
+        require(size);
+        return frame;
+    }
+
+    private void require(int bytes) throws EOFException {
+        if (frame.remaining() < bytes) {
+            throw new EOFException("Message needs " + bytes + " more bytes, but only " + frame.remaining() + " remain.");
+        }
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+        readFully(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void readFully(byte[] bytes, int offset, int length) throws IOException {
+        require(length);
+        frame.get(bytes, offset, length);
+    }
+
+    @Override
+    public int skipBytes(int count) {
+        int skipped = Math.max(0, Math.min(count, frame.remaining()));
+        frame.position(frame.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        require(Byte.BYTES);
+        return frame.get();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        require(Short.BYTES);
+        return frame.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        require(Character.BYTES);
+        return frame.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        require(Integer.BYTES);
+        return frame.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        require(Long.BYTES);
+        return frame.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        require(Float.BYTES);
+        return frame.getFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        require(Double.BYTES);
+        return frame.getDouble();
+    }
+
+    /**
+     * Reads bytes up to the next {@code \n}, {@code \r} or {@code \r\n} as Latin-1 characters, as
+     * {@link DataInput#readLine()} describes. Prefer {@link #readUTF()}, which handles any character.
+     *
+     * @return the line without its terminator, or {@code null} if the message has no bytes left.
+     */
+    @Override
+    public String readLine() {
+        if (!frame.hasRemaining()) {
+            return null;
+        }
+
+        StringBuilder line = new StringBuilder();
+        while (frame.hasRemaining()) {
+            int character = frame.get() & 0xFF;
+            if (character == '\n') {
+                break;
+            }
+            if (character == '\r') {
+                if (frame.hasRemaining() && frame.get(frame.position()) == '\n') {
+                    frame.get();
+                }
+                break;
+            }
+            line.append((char) character);
+        }
+        return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+}
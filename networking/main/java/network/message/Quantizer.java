@@ -0,0 +1,81 @@
+package network.message;
+
+import java.io.IOException;
+
+/**
+ * Maps floats to whole numbers of a fixed bit width and back, losing precision past a chosen step. Values outside a
+ * range are clamped to it; angles wrap around instead.
+ */
+public final class Quantizer {
+
+    private static final float FullTurn = 360f;
+
+    private final float min;
+    private final float step;
+    private final int maxValue;
+    private final int bits;
+    private final boolean wraps;
+
+    private Quantizer(float min, float step, int maxValue, int bits, boolean wraps) {
+        this.min = min;
+        this.step = step;
+        this.maxValue = maxValue;
+        this.bits = bits;
+        this.wraps = wraps;
+    }
+
+    /** Covers {@code min} to {@code max} in steps of {@code precision}. */
+    public static Quantizer range(float min, float max, float precision) {
+        if (!(max > min) || !(precision > 0f)) {
+            throw new IllegalArgumentException("Cannot quantize " + min + " to " + max + " in steps of " + precision + ".");
+        }
+
+        int steps = (int) Math.ceil((max - min) / precision);
+        return new Quantizer(min, precision, steps, bitsFor(steps), false);
+    }
+
+    /** Covers a full turn in degrees, in steps of at most {@code precision}. */
+    public static Quantizer angle(float precision) {
+        if (!(precision > 0f) || precision >= FullTurn) {
+            throw new IllegalArgumentException("Cannot quantize angles in steps of " + precision + ".");
+        }
+
+        int bits = bitsFor((int) Math.ceil(FullTurn / precision) - 1);
+        return new Quantizer(0f, FullTurn / (1 << bits), (1 << bits) - 1, bits, true);
+    }
+
+    private static int bitsFor(int maxValue) {
+        int bits = Integer.SIZE - Integer.numberOfLeadingZeros(maxValue);
+        BitWriter.checkBits(bits);
+        return bits;
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    public float precision() {
+        return step;
+    }
+
+    public int quantize(float value) {
+        float steps = (value - min) / step;
+        if (wraps) {
+            return Math.round(steps) & maxValue;
+        }
+
+        return Math.max(0, Math.min(maxValue, Math.round(steps)));
+    }
+
+    public float dequantize(int value) {
+        return min + value * step;
+    }
+
+    public BitWriter write(BitWriter writer, float value) {
+        return writer.write(quantize(value), bits);
+    }
+
+    public float read(BitReader reader) throws IOException {
+        return dequantize(reader.read(bits));
+    }
+}
@@ -0,0 +1,174 @@
+package network.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import network.message.FrameWriter;
+
+/**
+ * Seals and opens the datagrams of one session with AES-GCM. A datagram carries the session's token and its sequence
+ * number in the clear, followed by its encrypted payload. The token and key are handed to the client over the session's
+ * TLS connection, so only that client can send datagrams on its behalf.
+ * <p>
+ * Sealing and opening are each expected to happen on one thread at a time.
+ */
+public final class DatagramCipher {
+
+    /** Small enough to avoid IP fragmentation on common paths. */
+    public static final int MaxDatagramSize = 1200;
+    public static final int HeaderSize = Long.BYTES * 2;
+    public static final int TagSize = 16;
+    public static final int MaxPayloadSize = MaxDatagramSize - HeaderSize - TagSize;
+
+    private static final String Transformation = "AES/GCM/NoPadding";
+    private static final String KeyAlgorithm = "AES";
+    private static final int KeySize = 16;
+    private static final int NonceSize = 12;
+    private static final int ReplayWindow = Long.SIZE;
+    private static final int ServerDirection = 1;
+    private static final int ClientDirection = 2;
+    private static final SecureRandom Random = new SecureRandom();
+
+    private final long token;
+    private final byte[] key;
+    private final SecretKeySpec keySpec;
+    private final int sealDirection;
+    private final int openDirection;
+    private final Cipher sealer;
+    private final Cipher opener;
+    private final ByteBuffer opened = ByteBuffer.allocate(MaxDatagramSize);
+
+    private long nextSequence;
+    private long highestSequence = -1;
+    private long receivedWindow;
+
+    private DatagramCipher(long token, byte[] key, boolean isServer) throws GeneralSecurityException {
+        this.token = token;
+        this.key = key;
+        keySpec = new SecretKeySpec(key, KeyAlgorithm);
+        sealDirection = isServer ? ServerDirection : ClientDirection;
+        openDirection = isServer ? ClientDirection : ServerDirection;
+        sealer = Cipher.getInstance(Transformation);
+        opener = Cipher.getInstance(Transformation);
+    }
+
+    /** Creates the server's side of a new session, with a random token and key. */
+    public static DatagramCipher generate() throws GeneralSecurityException {
+        byte[] key = new byte[KeySize];
+        Random.nextBytes(key);
+        return new DatagramCipher(Random.nextLong(), key, true);
+    }
+
+    /** Creates the client's side of a session from the token and key written by {@link #writeTo(FrameWriter)}. */
+    public static DatagramCipher read(DataInput input) throws IOException, GeneralSecurityException {
+        long token = input.readLong();
+        byte[] key = new byte[KeySize];
+        input.readFully(key);
+        return new DatagramCipher(token, key, false);
+    }
+
+    /** Writes the session's token and key. Only ever write them to the session's TLS connection. */
+    public void writeTo(FrameWriter message) {
+        message.writeLong(token).write(key);
+    }
+
+    public long token() {
+        return token;
+    }
+
+    /** @return the token of a sealed {@code packet}, which must hold at least {@link #HeaderSize} bytes. */
+    public static long peekToken(ByteBuffer packet) {
+        return packet.getLong(packet.position());
+    }
+
+    /**
+     * Seals {@code payload} into the array-backed {@code packet}, leaving the packet ready to send.
+     *
+     * @return the packet's sequence number.
+     * @throws IllegalArgumentException if the payload is bigger than {@link #MaxPayloadSize}.
+     */
+    public long seal(ByteBuffer payload, ByteBuffer packet) throws GeneralSecurityException {
+        if (payload.remaining() > MaxPayloadSize) {
+            throw new IllegalArgumentException("Payload size " + payload.remaining() + " exceeds the datagram maximum of " + MaxPayloadSize + ".");
+        }
+
+        long sequence = nextSequence++;
+        packet.clear();
+        packet.putLong(token).putLong(sequence);
+
+        sealer.init(Cipher.ENCRYPT_MODE, keySpec, nonce(sealDirection, sequence));
+        sealer.updateAAD(packet.array(), packet.arrayOffset(), HeaderSize);
+        sealer.doFinal(payload, packet);
+        packet.flip();
+        return sequence;
+    }
+
+    /**
+     * Opens a sealed {@code packet}. Packets that don't belong to the session, don't authenticate, or have already
+     * been opened are rejected.
+     *
+     * @return the packet's payload, valid until the next call; or {@code null} if the packet was rejected.
+     */
+    public ByteBuffer open(ByteBuffer packet) {
+        if (packet.remaining() < HeaderSize + TagSize || packet.getLong(packet.position()) != token) {
+            return null;
+        }
+
+        long sequence = packet.getLong(packet.position() + Long.BYTES);
+        if (sequence < 0 || isReplayed(sequence)) {
+            return null;
+        }
+
+        opened.clear();
+        try {
+            opener.init(Cipher.DECRYPT_MODE, keySpec, nonce(openDirection, sequence));
+            opener.updateAAD(packet.array(), packet.arrayOffset() + packet.position(), HeaderSize);
+            packet.position(packet.position() + HeaderSize);
+            opener.doFinal(packet, opened);
+        } catch (GeneralSecurityException exception) {
+            return null;
+        }
+
+        markReceived(sequence);
+        return opened.flip();
+    }
+
+    /** @return the sequence number of the newest packet opened, or -1 if none have been. */
+    long highestSequence() {
+        return highestSequence;
+    }
+
+    /** @return which of the 64 packets up to and including {@link #highestSequence()} have been opened, newest first. */
+    long receivedWindow() {
+        return receivedWindow;
+    }
+
+    private static GCMParameterSpec nonce(int direction, long sequence) {
+        return new GCMParameterSpec(TagSize * Byte.SIZE, ByteBuffer.allocate(NonceSize).putInt(direction).putLong(sequence).array());
+    }
+
+    private boolean isReplayed(long sequence) {
+        if (sequence > highestSequence) {
+            return false;
+        }
+
+        long age = highestSequence - sequence;
+        return age >= ReplayWindow || (receivedWindow & (1L << age)) != 0;
+    }
+
+    private void markReceived(long sequence) {
+        if (sequence > highestSequence) {
+            long shift = sequence - highestSequence;
+            receivedWindow = shift >= ReplayWindow ? 1L : (receivedWindow << shift) | 1L;
+            highestSequence = sequence;
+        } else {
+            receivedWindow |= 1L << (highestSequence - sequence);
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package network.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import network.message.Delivery;
+import network.message.Frame;
+import network.message.Frames;
+
+/**
+ * A reliability layer over one session's datagrams.
+ * <p>
+ * Every packet acknowledges the newest packet received from the peer and the 63 before it, so acknowledgements ride
+ * along with whatever is sent next. Reliable messages are numbered per channel, and resent once a packet carrying them
+ * is found lost: either because packets sent well after it were acknowledged, or because the retransmit timeout
+ * passed. The timeout follows the measured round-trip time, rather than a fixed minimum like TCP's.
+ * <p>
+ * {@link #tick()} must be called every {@link #TickInterval} milliseconds to resend messages and acknowledge packets
+ * when there is nothing else to send.
+ */
+public final class DatagramSession {
+
+    public static final long TickInterval = 10;
+
+    private static final int AckHeaderSize = Long.BYTES * 2;
+    private static final int MessageHeaderSize = 1 + Integer.BYTES;
+    public static final int MaxFrameSize = DatagramCipher.MaxPayloadSize - AckHeaderSize - MessageHeaderSize;
+
+    private static final int WindowSize = 256;
+    private static final int SentPacketHistory = 256;
+    private static final int LossThreshold = 3;
+    private static final int MaxBackoffShift = 2;
+    private static final long InitialRetransmitTimeout = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MinRetransmitTimeout = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long MaxRetransmitTimeout = TimeUnit.MILLISECONDS.toNanos(1000);
+    private static final byte[] Handled = new byte[0];
+
+    /** Sends a sealed packet to the session's peer. */
+    public interface PacketSender {
+        void send(ByteBuffer packet) throws IOException;
+    }
+
+    private final DatagramCipher cipher;
+    private final PacketSender packetSender;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer payload = ByteBuffer.allocate(DatagramCipher.MaxPayloadSize);
+    private final ByteBuffer packet = ByteBuffer.allocate(DatagramCipher.MaxDatagramSize);
+    private final List<PendingMessage> packetMessages = new ArrayList<>();
+    private final SentPacket[] sentPackets = new SentPacket[SentPacketHistory];
+
+    private final SendChannel unorderedSender = new SendChannel();
+    private final SendChannel orderedSender = new SendChannel();
+    private final ReceiveChannel unorderedReceiver = new ReceiveChannel(false);
+    private final ReceiveChannel orderedReceiver = new ReceiveChannel(true);
+
+    private long smoothedRoundTripTime;
+    private long roundTripTimeVariance;
+    private long retransmitTimeout = InitialRetransmitTimeout;
+    private boolean isAckDue;
+
+    public DatagramSession(DatagramCipher cipher, PacketSender packetSender) {
+        this.cipher = cipher;
+        this.packetSender = packetSender;
+        for (int i = 0; i < sentPackets.length; i++) {
+            sentPackets[i] = new SentPacket();
+        }
+    }
+
+    public long token() {
+        return cipher.token();
+    }
+
+    /** @return the smoothed round-trip time in nanoseconds, or 0 before the first reliable message is acknowledged. */
+    public long getRoundTripTime() {
+        lock.lock();
+        try {
+            return smoothedRoundTripTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends a whole frame, including its length prefix, with the given {@code delivery}.
+     *
+     * @throws IllegalArgumentException if the frame is bigger than {@link #MaxFrameSize}, or the delivery is
+     *                                  {@link Delivery#Stream}.
+     */
+    public void send(ByteBuffer frame, Delivery delivery) throws IOException {
+        checkFrame(frame.remaining(), delivery);
+        if (delivery != Delivery.Unreliable) {
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            sendReliable(new PendingMessage(delivery, bytes));
+            return;
+        }
+
+        lock.lock();
+        try {
+            beginPacket();
+            payload.put((byte) delivery.ordinal()).put(frame);
+            sendPacket();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @see #send(ByteBuffer, Delivery) */
+    public void send(Frame frame, Delivery delivery) throws IOException {
+        checkFrame(frame.size(), delivery);
+        if (delivery != Delivery.Unreliable) {
+            byte[] bytes = new byte[frame.size()];
+            frame.writeTo(ByteBuffer.wrap(bytes));
+            sendReliable(new PendingMessage(delivery, bytes));
+            return;
+        }
+
+        lock.lock();
+        try {
+            beginPacket();
+            payload.put((byte) delivery.ordinal());
+            frame.writeTo(payload);
+            sendPacket();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void checkFrame(int frameSize, Delivery delivery) {
+        if (frameSize > MaxFrameSize) {
+            throw new IllegalArgumentException("Frame size " + frameSize + " exceeds the datagram maximum of " + MaxFrameSize + ".");
+        }
+        if (delivery == Delivery.Stream) {
+            throw new IllegalArgumentException("Stream messages cannot be sent as datagrams.");
+        }
+    }
+
+    private void sendReliable(PendingMessage message) throws IOException {
+        lock.lock();
+        try {
+            SendChannel channel = sendChannel(message.delivery);
+            // messages wait their turn while the channel's window is full, so their numbering keeps their order.
+            if (!channel.backlog.isEmpty() || !channel.assign(message)) {
+                channel.backlog.add(message);
+                return;
+            }
+
+            beginPacket();
+            putMessage(message, System.nanoTime());
+            sendPacket();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Resends reliable messages whose retransmit timeout passed, and acknowledges packets if nothing else did. */
+    public void tick() throws IOException {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            beginPacket();
+            resendDue(unorderedSender, now);
+            resendDue(orderedSender, now);
+
+            if (!packetMessages.isEmpty() || isAckDue) {
+                sendPacket();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resendDue(SendChannel channel, long now) throws IOException {
+        for (int sequence = channel.oldestSequence; sequence < channel.nextSequence; sequence++) {
+            PendingMessage message = channel.window[sequence % WindowSize];
+            if (message == null || (message.isSent() && now - message.sentAt < message.timeout(retransmitTimeout))) {
+                continue;
+            }
+
+            if (payload.remaining() < MessageHeaderSize + message.frame.length) {
+                sendPacket();
+                beginPacket();
+            }
+            if (message.isSent()) {
+                message.resends++;
+            }
+            putMessage(message, now);
+        }
+    }
+
+    /**
+     * Opens a sealed {@code packet}, and collects the frames it makes ready for handling into {@code frames}. Frames are
+     * valid until the next call.
+     *
+     * @return whether the packet was authentic.
+     */
+    public boolean receive(ByteBuffer packet, List<ByteBuffer> frames) {
+        frames.clear();
+        lock.lock();
+        try {
+            ByteBuffer received = cipher.open(packet);
+            if (received == null || received.remaining() < AckHeaderSize) {
+                return false;
+            }
+
+            acknowledge(received.getLong(), received.getLong(), System.nanoTime());
+            while (received.hasRemaining()) {
+                Delivery delivery = Delivery.of(received.get());
+                if (delivery == null || delivery == Delivery.Stream) {
+                    break;
+                }
+
+                int sequence = 0;
+                if (delivery != Delivery.Unreliable) {
+                    if (received.remaining() < Integer.BYTES) {
+                        break;
+                    }
+                    sequence = received.getInt();
+                }
+
+                ByteBuffer frame = Frames.nextFrame(received);
+                if (frame == null) {
+                    break;
+                }
+
+                switch (delivery) {
+                    case Unreliable -> frames.add(frame);
+                    case ReliableUnordered -> unorderedReceiver.receive(sequence, frame, frames);
+                    case ReliableOrdered -> orderedReceiver.receive(sequence, frame, frames);
+                }
+                // reliable messages are acknowledged even if they were duplicates, since the earlier ack may have been lost.
+                isAckDue |= delivery != Delivery.Unreliable;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acknowledge(long newestSequence, long receivedWindow, long now) {
+        for (int age = 0; age < Long.SIZE && newestSequence - age >= 0; age++) {
+            long sequence = newestSequence - age;
+            SentPacket sentPacket = sentPackets[(int) (sequence % SentPacketHistory)];
+            if (sentPacket.sequence != sequence || sentPacket.isAcknowledged) {
+                continue;
+            }
+
+            if ((receivedWindow & (1L << age)) == 0) {
+                // a packet sent well before one that arrived is lost rather than late, so resend its messages next tick.
+                if (age >= LossThreshold) {
+                    for (PendingMessage message : sentPacket.messages) {
+                        if (!message.isAcknowledged && message.lastPacketSequence == sequence) {
+                            message.markLost();
+                        }
+                    }
+                    sentPacket.messages.clear();
+                }
+                continue;
+            }
+            sentPacket.isAcknowledged = true;
+
+            // only packets carrying reliable messages are acknowledged right away, so only they give useful samples.
+            if (age == 0 && !sentPacket.messages.isEmpty()) {
+                updateRoundTripTime(now - sentPacket.sentAt);
+            }
+
+            for (PendingMessage message : sentPacket.messages) {
+                sendChannel(message.delivery).acknowledge(message);
+            }
+            sentPacket.messages.clear();
+        }
+
+        unorderedSender.assignBacklog();
+        orderedSender.assignBacklog();
+    }
+
+    /** Follows RFC 6298, with the clock granularity being the tick interval. */
+    private void updateRoundTripTime(long sample) {
+        if (smoothedRoundTripTime == 0) {
+            smoothedRoundTripTime = sample;
+            roundTripTimeVariance = sample / 2;
+        } else {
+            roundTripTimeVariance = (3 * roundTripTimeVariance + Math.abs(smoothedRoundTripTime - sample)) / 4;
+            smoothedRoundTripTime = (7 * smoothedRoundTripTime + sample) / 8;
+        }
+
+        long timeout = smoothedRoundTripTime + Math.max(TimeUnit.MILLISECONDS.toNanos(TickInterval), 4 * roundTripTimeVariance);
+        retransmitTimeout = Math.min(Math.max(timeout, MinRetransmitTimeout), MaxRetransmitTimeout);
+    }
+
+    private SendChannel sendChannel(Delivery delivery) {
+        return delivery == Delivery.ReliableOrdered ? orderedSender : unorderedSender;
+    }
+
+    private void beginPacket() {
+        payload.clear();
+        payload.putLong(cipher.highestSequence()).putLong(cipher.receivedWindow());
+        packetMessages.clear();
+    }
+
+    private void putMessage(PendingMessage message, long now) {
+        payload.put((byte) message.delivery.ordinal()).putInt(message.sequence).put(message.frame);
+        message.sentAt = now;
+        packetMessages.add(message);
+    }
+
+    private void sendPacket() throws IOException {
+        long sequence;
+        try {
+            sequence = cipher.seal(payload.flip(), packet);
+        } catch (GeneralSecurityException exception) {
+            throw new IOException("Couldn't seal datagram.", exception);
+        }
+
+        SentPacket sentPacket = sentPackets[(int) (sequence % SentPacketHistory)];
+        sentPacket.sequence = sequence;
+        sentPacket.sentAt = System.nanoTime();
+        sentPacket.isAcknowledged = false;
+        sentPacket.messages.clear();
+        sentPacket.messages.addAll(packetMessages);
+        for (PendingMessage message : packetMessages) {
+            message.lastPacketSequence = sequence;
+        }
+        packetMessages.clear();
+        isAckDue = false;
+
+        packetSender.send(packet);
+    }
+
+    private static final class PendingMessage {
+        private static final long NotSent = Long.MIN_VALUE;
+
+        private final Delivery delivery;
+        private final byte[] frame;
+        private int sequence;
+        private long sentAt = NotSent;
+        private long lastPacketSequence = -1;
+        private int resends;
+        private boolean isAcknowledged;
+
+        private PendingMessage(Delivery delivery, byte[] frame) {
+            this.delivery = delivery;
+            this.frame = frame;
+        }
+
+        private boolean isSent() {
+            return sentAt != NotSent;
+        }
+
+        /** Lost messages are resent without backing off, since the loss was seen rather than timed out. */
+        private void markLost() {
+            sentAt = NotSent;
+        }
+
+        /** Backs off exponentially while the message keeps getting lost. */
+        private long timeout(long retransmitTimeout) {
+            return Math.min(retransmitTimeout << Math.min(resends, MaxBackoffShift), MaxRetransmitTimeout);
+        }
+    }
+
+    private static final class SentPacket {
+        private final List<PendingMessage> messages = new ArrayList<>();
+        private long sequence = -1;
+        private long sentAt;
+        private boolean isAcknowledged;
+    }
+
+    private static final class SendChannel {
+        private final PendingMessage[] window = new PendingMessage[WindowSize];
+        private final Queue<PendingMessage> backlog = new ArrayDeque<>();
+        private int oldestSequence;
+        private int nextSequence;
+
+        /** Numbers {@code message} and adds it to the window, if the window has room. */
+        private boolean assign(PendingMessage message) {
+            if (nextSequence - oldestSequence >= WindowSize) {
+                return false;
+            }
+
+            message.sequence = nextSequence++;
+            window[message.sequence % WindowSize] = message;
+            return true;
+        }
+
+        /** Backlogged messages are sent by the next tick. */
+        private void assignBacklog() {
+            while (!backlog.isEmpty() && assign(backlog.peek())) {
+                backlog.poll();
+            }
+        }
+
+        private void acknowledge(PendingMessage message) {
+            if (message.isAcknowledged) {
+                return;
+            }
+            message.isAcknowledged = true;
+
+            int index = message.sequence % WindowSize;
+            if (window[index] == message) {
+                window[index] = null;
+            }
+            while (oldestSequence < nextSequence && window[oldestSequence % WindowSize] == null) {
+                oldestSequence++;
+            }
+        }
+    }
+
+    /** Tracks which of the next {@link #WindowSize} messages arrived, holding back early ones if ordered. */
+    private static final class ReceiveChannel {
+        private final boolean isOrdered;
+        private final byte[][] arrived = new byte[WindowSize][];
+        private int nextSequence;
+
+        private ReceiveChannel(boolean isOrdered) {
+            this.isOrdered = isOrdered;
+        }
+
+        private void receive(int sequence, ByteBuffer frame, List<ByteBuffer> frames) {
+            int index = sequence % WindowSize;
+            if (sequence < nextSequence || sequence >= nextSequence + WindowSize || arrived[index] != null) {
+                return;
+            }
+
+            if (isOrdered && sequence != nextSequence) {
+                byte[] early = new byte[frame.remaining()];
+                frame.get(early);
+                arrived[index] = early;
+                return;
+            }
+
+            frames.add(frame);
+            arrived[index] = Handled;
+            while (arrived[nextSequence % WindowSize] != null) {
+                byte[] next = arrived[nextSequence % WindowSize];
+                arrived[nextSequence % WindowSize] = null;
+                if (next != Handled) {
+                    frames.add(ByteBuffer.wrap(next));
+                }
+                nextSequence++;
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package network.security;
+
+import tech.fastj.logging.Log;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+
+import network.transport.BufferPool;
+import network.transport.ChannelConnection;
+import network.transport.Reactor;
+
+/**
+ * A {@link ChannelConnection} encrypted with an {@link SSLEngine}.
+ * <p>
+ * Handshakes progress on the reactor thread as data arrives, with the engine's delegated tasks run on a separate
+ * executor so they never stall the reactor. Wrapping and unwrapping go through pooled direct buffers that are only held
+ * for a single operation; partially-received records are the only per-connection inbound state.
+ */
+public class SecureChannelConnection extends ChannelConnection {
+
+    private static final ByteBuffer Empty = ByteBuffer.allocate(0);
+
+    private final SSLEngine engine;
+    private final BufferPool bufferPool;
+    private final Executor taskExecutor;
+
+    /**
+     * Unprocessed encrypted bytes, left over from a single pooled read, so never more than fits in a pooled buffer. Only
+     * touched on the reactor thread.
+     */
+    private ByteBuffer inboundRemainder;
+    private boolean isRunningTasks;
+
+    /** Application data written before the handshake completed. Guarded by the write lock. */
+    private ByteBuffer pendingApplicationData;
+    private volatile boolean isHandshakeComplete;
+    private boolean isOutboundClosed;
+
+    public SecureChannelConnection(SocketChannel channel, Reactor reactor, SSLEngine engine, BufferPool bufferPool, Executor taskExecutor) throws IOException {
+        super(channel, reactor);
+        this.engine = engine;
+        this.bufferPool = bufferPool;
+        this.taskExecutor = taskExecutor;
+
+        engine.beginHandshake();
+    }
+
+    public boolean isHandshakeComplete() {
+        return isHandshakeComplete;
+    }
+
+    @Override
+    public void registered(SelectionKey key) {
+        super.registered(key);
+
+        // client-mode engines start the handshake themselves.
+        try {
+            progressHandshake(engine.getHandshakeStatus());
+        } catch (IOException exception) {
+            close(exception);
+        }
+    }
+
+    @Override
+    protected void onReadable() throws IOException {
+        if (isRunningTasks) {
+            // the engine can't take more until its tasks finish, so leave what arrives in the socket until then.
+            setReadPaused(true);
+            return;
+        }
+
+        ByteBuffer encrypted = bufferPool.acquire();
+        try {
+            if (inboundRemainder != null) {
+                inboundRemainder.flip();
+                encrypted.put(inboundRemainder);
+                inboundRemainder = null;
+            }
+
+            if (channel.read(encrypted) == -1) {
+                closeInbound();
+                return;
+            }
+
+            encrypted.flip();
+            unwrapAll(encrypted);
+            keepRemainder(encrypted);
+        } finally {
+            bufferPool.release(encrypted);
+        }
+    }
+
+    @Override
+    protected void onOutbound(ByteBuffer data) throws IOException {
+        if (!isHandshakeComplete) {
+            pendingApplicationData = ensureCapacity(pendingApplicationData, data.remaining());
+            pendingApplicationData.put(data);
+            return;
+        }
+
+        wrap(data);
+    }
+
+    @Override
+    protected void close(IOException cause) {
+        synchronized (writeLock()) {
+            if (!isOutboundClosed && channel.isOpen()) {
+                isOutboundClosed = true;
+                engine.closeOutbound();
+                try {
+                    wrap(Empty);
+                } catch (IOException exception) {
+                    Log.trace(this.getClass(), "Couldn't send close_notify: {}", exception.getMessage());
+                }
+            }
+        }
+
+        super.close(cause);
+    }
+
+    private void unwrapAll(ByteBuffer encrypted) throws IOException {
+        ByteBuffer decrypted = bufferPool.acquire();
+        try {
+            while (encrypted.hasRemaining() && !isRunningTasks) {
+                SSLEngineResult result = engine.unwrap(encrypted, decrypted);
+
+                if (decrypted.position() > 0) {
+                    decrypted.flip();
+                    onInbound(decrypted);
+                    decrypted.clear();
+                }
+
+                switch (result.getStatus()) {
+                    case BUFFER_UNDERFLOW -> {
+                        return;
+                    }
+                    case BUFFER_OVERFLOW -> throw new SSLException("Pooled buffers are too small for the engine's application data.");
+                    case CLOSED -> {
+                        close(null);
+                        return;
+                    }
+                    case OK -> progressHandshake(result.getHandshakeStatus());
+                }
+            }
+        } finally {
+            bufferPool.release(decrypted);
+        }
+    }
+
+    private void progressHandshake(SSLEngineResult.HandshakeStatus handshakeStatus) throws IOException {
+        while (true) {
+            switch (handshakeStatus) {
+                case NEED_WRAP -> {
+                    synchronized (writeLock()) {
+                        handshakeStatus = wrap(Empty);
+                    }
+                }
+                case NEED_TASK -> {
+                    runDelegatedTasks();
+                    return;
+                }
+                case FINISHED, NOT_HANDSHAKING -> {
+                    if (!isHandshakeComplete) {
+                        completeHandshake();
+                    }
+                    return;
+                }
+                default -> {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void runDelegatedTasks() {
+        isRunningTasks = true;
+        taskExecutor.execute(() -> {
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            reactor.execute(this::resumeHandshake);
+        });
+    }
+
+    private void resumeHandshake() {
+        isRunningTasks = false;
+        setReadPaused(false);
+        try {
+            progressHandshake(engine.getHandshakeStatus());
+
+            if (inboundRemainder != null && !isRunningTasks) {
+                ByteBuffer encrypted = inboundRemainder;
+                inboundRemainder = null;
+                encrypted.flip();
+                unwrapAll(encrypted);
+                keepRemainder(encrypted);
+            }
+        } catch (IOException exception) {
+            close(exception);
+        }
+    }
+
+    private void completeHandshake() throws IOException {
+        synchronized (writeLock()) {
+            isHandshakeComplete = true;
+            Log.trace(this.getClass(), "Handshake completed using {}", engine.getSession().getProtocol());
+
+            if (pendingApplicationData != null) {
+                pendingApplicationData.flip();
+                wrap(pendingApplicationData);
+                pendingApplicationData = null;
+            }
+        }
+    }
+
+    /** Encrypts {@code data} and writes it to the channel. Callers must hold the write lock. */
+    private SSLEngineResult.HandshakeStatus wrap(ByteBuffer data) throws IOException {
+        ByteBuffer encrypted = bufferPool.acquire();
+        try {
+            SSLEngineResult result;
+            do {
+                result = engine.wrap(data, encrypted);
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    throw new SSLException("Pooled buffers are too small for the engine's packets.");
+                }
+
+                encrypted.flip();
+                writeToChannel(encrypted);
+                encrypted.clear();
+
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED && data.hasRemaining()) {
+                    throw new ClosedChannelException();
+                }
+            } while (data.hasRemaining());
+
+            return result.getHandshakeStatus();
+        } finally {
+            bufferPool.release(encrypted);
+        }
+    }
+
+    private void closeInbound() {
+        try {
+            engine.closeInbound();
+        } catch (SSLException exception) {
+            Log.trace(this.getClass(), "Connection closed without close_notify: {}", exception.getMessage());
+        }
+        close(null);
+    }
+
+    private void keepRemainder(ByteBuffer encrypted) {
+        if (!encrypted.hasRemaining()) {
+            return;
+        }
+
+        inboundRemainder = ensureCapacity(inboundRemainder, encrypted.remaining());
+        inboundRemainder.put(encrypted);
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int additionalBytes) {
+        if (buffer == null) {
+            return ByteBuffer.allocate(Math.max(additionalBytes, 1024));
+        }
+
+        if (buffer.remaining() >= additionalBytes) {
+            return buffer;
+        }
+
+        ByteBuffer expanded = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + additionalBytes));
+        buffer.flip();
+        expanded.put(buffer);
+        return expanded;
+    }
+}
@@ -0,0 +1,47 @@
+package network.security;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+
+import network.client.ClientConfig;
+import network.security.util.SecureUtil;
+import network.transport.BufferPool;
+
+public class SecureEngineFactory {
+
+    private static final String Instance = "JKS";
+    private static final int MaxPooledBuffers = 256;
+
+    public static SSLContext getContext(SecureServerConfig secureServerConfig) throws IOException, GeneralSecurityException {
+        return SecureUtil.generateSSLContext(secureServerConfig, Instance);
+    }
+
+    public static SSLContext getContext(SecureServerConfig secureServerConfig, Certificate certificate, String alias) throws IOException, GeneralSecurityException {
+        return SecureUtil.generateSSLContext(secureServerConfig, Instance, certificate, alias);
+    }
+
+    public static SSLEngine getServerEngine(SSLContext sslContext) {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        return engine;
+    }
+
+    public static SSLEngine getClientEngine(ClientConfig clientConfig, SSLContext sslContext) {
+        SSLEngine engine = sslContext.createSSLEngine(clientConfig.host(), clientConfig.port());
+        engine.setUseClientMode(true);
+        return engine;
+    }
+
+    /** Creates a pool of direct buffers big enough for any packet or application data the context's engines produce. */
+    public static BufferPool getBufferPool(SSLContext sslContext) {
+        SSLSession session = sslContext.createSSLEngine().getSession();
+        int bufferSize = Math.max(session.getPacketBufferSize(), session.getApplicationBufferSize());
+
+        // room for a partial record carried over from the previous read.
+        return new BufferPool(bufferSize * 2, MaxPooledBuffers);
+    }
+}
@@ -4,5 +4,12 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.function.BiConsumer;
 
-public record ClientDataAction(byte identifier, BiConsumer<ServerClient, Map<UUID, ServerClient>> dataAction) {
+import network.message.Delivery;
+
+/** @param delivery how clients send the message. Declarations are handed to clients as they connect. */
+public record ClientDataAction(byte identifier, Delivery delivery, BiConsumer<ServerClient, Map<UUID, ServerClient>> dataAction) {
+
+    public ClientDataAction(byte identifier, BiConsumer<ServerClient, Map<UUID, ServerClient>> dataAction) {
+        this(identifier, Delivery.Stream, dataAction);
+    }
 }
@@ -0,0 +1,104 @@
+package network.server;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import network.message.Frame;
+
+/** A bounded queue of frames waiting to be written to a single client. */
+class OutboundQueue {
+
+    private final Frame[] frames;
+    private final OverflowPolicy overflowPolicy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int head;
+    private volatile int size;
+    private volatile int queuedBytes;
+
+    OutboundQueue(int capacity, OverflowPolicy overflowPolicy) {
+        this.frames = new Frame[capacity];
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int queuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Queues {@code frame}, applying the overflow policy if the queue is full.
+     *
+     * @return {@code false} if the frame couldn't be queued, and the client should be disconnected.
+     */
+    boolean offer(Frame frame) {
+        lock.lock();
+        try {
+            if (size < frames.length) {
+                frames[(head + size) % frames.length] = frame;
+                size++;
+                queuedBytes += frame.size();
+                return true;
+            }
+
+            switch (overflowPolicy) {
+                case DropOldest -> {
+                    queuedBytes += frame.size() - frames[head].size();
+                    frames[head].release();
+                    frames[head] = frame;
+                    head = (head + 1) % frames.length;
+                    return true;
+                }
+                case Coalesce -> {
+                    // search from the newest frame, since it's the most likely to carry the same state.
+                    for (int i = size - 1; i >= 0; i--) {
+                        int index = (head + i) % frames.length;
+                        if (frame.supersedes(frames[index])) {
+                            queuedBytes += frame.size() - frames[index].size();
+                            frames[index].release();
+                            frames[index] = frame;
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the oldest queued frame, or {@code null} if the queue is empty. */
+    Frame poll() {
+        lock.lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+
+            Frame frame = frames[head];
+            frames[head] = null;
+            head = (head + 1) % frames.length;
+            size--;
+            queuedBytes -= frame.size();
+            return frame;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        Frame frame;
+        while ((frame = poll()) != null) {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package network.server;
+
+/** What a client's outbound queue does with a new message when it is already full. */
+public enum OverflowPolicy {
+    /** Disconnects the client, as it can't keep up with the messages sent to it. */
+    Disconnect,
+    /** Drops the oldest queued message to make room for the new one. */
+    DropOldest,
+    /**
+     * Replaces a queued message that the new one {@link network.message.Frame#supersedes(network.message.Frame)
+     * supersedes}. Disconnects the client if no queued message can be replaced.
+     */
+    Coalesce
+}
@@ -2,25 +2,50 @@ package network.server;
 
 import tech.fastj.logging.Log;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocket;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.security.GeneralSecurityException;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 
+import network.message.Delivery;
+import network.message.Frame;
+import network.message.FrameWriter;
+import network.security.DatagramCipher;
+import network.security.DatagramSession;
+import network.security.SecureChannelConnection;
+import network.security.SecureEngineFactory;
 import network.security.SecureServerConfig;
 import network.security.SecureServerSocketFactory;
+import network.transport.BufferPool;
+import network.transport.ChannelConnection;
+import network.transport.ReactorGroup;
+import network.transport.SelectionHandler;
+import network.transport.TransportType;
 
 public class Server implements Runnable {
 
@@ -36,70 +61,96 @@ public class Server implements Runnable {
     });
 
     private SSLServerSocket server;
+    private ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+    private ServerConfig serverConfig;
+    private SSLContext sslContext;
+    private BufferPool bufferPool;
+    private ReactorGroup reactorGroup;
     private final ExecutorService commandInterpreter;
 
-    private final LinkedHashMap<UUID, ServerClient> clients;
+    /**
+     * Added to by the accepting thread, removed from and read by listener threads and game loops alike. Removal is one
+     * atomic step, so however many threads remove a client at once, its disconnect actions only run once.
+     */
+    private final Map<UUID, ServerClient> clients;
+    private final Map<UUID, ServerClient> clientsView;
     private final List<BiConsumer<ServerClient, Map<UUID, ServerClient>>> clientConnectActions;
     private final List<BiConsumer<ServerClient, Map<UUID, ServerClient>>> clientDisconnectActions;
-    private final Map<Byte, ClientDataAction> clientDataActions;
+    /** Indexed by unsigned identifier. */
+    private final ClientDataAction[] clientDataActions;
     private final Map<String, ServerCommand> serverCommandActions;
 
+    private final ReentrantLock acceptLock = new ReentrantLock();
     private ExecutorService clientAccepter;
     private ExecutorService clientManager;
+    private ExecutorService clientWriters;
+    private DatagramChannel datagramChannel;
+    private int datagramPort;
+    private ExecutorService datagramReceiver;
+    private ScheduledExecutorService datagramTicker;
+    private final Map<Long, ServerClient> datagramClients = new ConcurrentHashMap<>();
     private volatile boolean isRunning;
     private volatile boolean isAcceptingClients;
 
     public Server(ServerConfig serverConfig, SecureServerConfig secureServerConfig, Certificate certificate, String alias) throws IOException, GeneralSecurityException {
         reset(serverConfig, secureServerConfig, certificate, alias);
 
-        clients = new LinkedHashMap<>(5, 1.0f, false);
+        clients = new ConcurrentHashMap<>();
+        clientsView = Collections.unmodifiableMap(clients);
         clientConnectActions = new ArrayList<>();
         clientDisconnectActions = new ArrayList<>();
 
-        clientDataActions = new HashMap<>();
-        clientDataActions.put(ClientLeave, clientDisconnectAction);
+        clientDataActions = new ClientDataAction[256];
+        clientDataActions[ClientLeave & 0xFF] = clientDisconnectAction;
         serverCommandActions = new HashMap<>();
         serverCommandActions.put(StopServer, shutdownCommand);
-        clientAccepter = Executors.newWorkStealingPool();
-        commandInterpreter = Executors.newSingleThreadExecutor();
+        clientAccepter = serverConfig.executionMode().newLoopExecutor();
+        commandInterpreter = serverConfig.executionMode().newLoopExecutor();
     }
 
     public Server(ServerConfig serverConfig, SecureServerConfig secureServerConfig) throws IOException, GeneralSecurityException {
         reset(serverConfig, secureServerConfig);
 
-        clients = new LinkedHashMap<>(5, 1.0f, false);
+        clients = new ConcurrentHashMap<>();
+        clientsView = Collections.unmodifiableMap(clients);
         clientConnectActions = new ArrayList<>();
         clientDisconnectActions = new ArrayList<>();
 
-        clientDataActions = new HashMap<>();
-        clientDataActions.put(ClientLeave, clientDisconnectAction);
+        clientDataActions = new ClientDataAction[256];
+        clientDataActions[ClientLeave & 0xFF] = clientDisconnectAction;
         serverCommandActions = new HashMap<>();
         serverCommandActions.put(StopServer, shutdownCommand);
-        clientAccepter = Executors.newWorkStealingPool();
-        commandInterpreter = Executors.newSingleThreadExecutor();
+        clientAccepter = serverConfig.executionMode().newLoopExecutor();
+        commandInterpreter = serverConfig.executionMode().newLoopExecutor();
     }
 
     public Server(ServerConfig serverConfig) throws IOException {
         reset(serverConfig);
 
-        clients = new LinkedHashMap<>(5, 1.0f, false);
+        clients = new ConcurrentHashMap<>();
+        clientsView = Collections.unmodifiableMap(clients);
         clientConnectActions = new ArrayList<>();
         clientDisconnectActions = new ArrayList<>();
 
-        clientDataActions = new HashMap<>();
-        clientDataActions.put(ClientLeave, clientDisconnectAction);
+        clientDataActions = new ClientDataAction[256];
+        clientDataActions[ClientLeave & 0xFF] = clientDisconnectAction;
         serverCommandActions = new HashMap<>();
         serverCommandActions.put(StopServer, shutdownCommand);
-        clientAccepter = Executors.newWorkStealingPool();
-        commandInterpreter = Executors.newSingleThreadExecutor();
+        clientAccepter = serverConfig.executionMode().newLoopExecutor();
+        commandInterpreter = serverConfig.executionMode().newLoopExecutor();
     }
 
     public void reset(ServerConfig serverConfig, SecureServerConfig secureServerConfig, Certificate certificate, String alias) throws IOException, GeneralSecurityException {
         if (isAcceptingClients) {
             Log.warn(this.getClass(), "Cannot reset server socket while clients are being accepted.");
         }
-        if (server != null) {
-            server.close();
+        closeServerSocket();
+        this.serverConfig = serverConfig;
+
+        if (serverConfig.transportType() == TransportType.Reactor) {
+            openServerChannel(serverConfig, SecureEngineFactory.getContext(secureServerConfig, certificate, alias));
+            return;
         }
 
         server = SecureServerSocketFactory.getServerSocket(serverConfig, secureServerConfig, certificate, alias);
@@ -109,8 +160,12 @@ public class Server implements Runnable {
         if (isAcceptingClients) {
             Log.warn(this.getClass(), "Cannot reset server socket while clients are being accepted.");
         }
-        if (server != null) {
-            server.close();
+        closeServerSocket();
+        this.serverConfig = serverConfig;
+
+        if (serverConfig.transportType() == TransportType.Reactor) {
+            openServerChannel(serverConfig, SecureEngineFactory.getContext(secureServerConfig));
+            return;
         }
 
         server = SecureServerSocketFactory.getServerSocket(serverConfig, secureServerConfig);
@@ -120,15 +175,40 @@ public class Server implements Runnable {
         if (isAcceptingClients) {
             Log.warn(this.getClass(), "Cannot reset server socket while clients are being accepted.");
         }
-        if (server != null) {
-            server.close();
+        closeServerSocket();
+        this.serverConfig = serverConfig;
+
+        if (serverConfig.transportType() == TransportType.Reactor) {
+            openServerChannel(serverConfig, null);
+            return;
         }
 
         server = SecureServerSocketFactory.getDefault(serverConfig);
     }
 
+    private void openServerChannel(ServerConfig serverConfig, SSLContext sslContext) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(serverConfig.localAddress(), serverConfig.port()), serverConfig.backlog());
+        serverChannel.configureBlocking(false);
+
+        this.sslContext = sslContext;
+        bufferPool = sslContext != null ? SecureEngineFactory.getBufferPool(sslContext) : null;
+    }
+
+    private void closeServerSocket() throws IOException {
+        if (server != null) {
+            server.close();
+            server = null;
+        }
+        if (serverChannel != null) {
+            serverChannel.close();
+            serverChannel = null;
+            acceptKey = null;
+        }
+    }
+
     public Map<UUID, ServerClient> getClients() {
-        return Collections.unmodifiableMap(clients);
+        return clientsView;
     }
 
     public boolean isRunning() {
@@ -144,20 +224,24 @@ public class Server implements Runnable {
             throw new IllegalArgumentException("The identifier cannot be less than 1.");
         }
 
-        if (clientDataActions.containsKey(dataAction.identifier())) {
+        if (clientDataActions[dataAction.identifier() & 0xFF] != null) {
             return false;
         }
 
-        clientDataActions.put(dataAction.identifier(), dataAction);
+        clientDataActions[dataAction.identifier() & 0xFF] = dataAction;
         return true;
     }
 
     public ClientDataAction replaceClientAction(ClientDataAction dataAction) {
-        return clientDataActions.put(dataAction.identifier(), dataAction);
+        ClientDataAction replacedAction = clientDataActions[dataAction.identifier() & 0xFF];
+        clientDataActions[dataAction.identifier() & 0xFF] = dataAction;
+        return replacedAction;
     }
 
     public ClientDataAction removeClientAction(byte identifier) {
-        return clientDataActions.remove(identifier);
+        ClientDataAction removedAction = clientDataActions[identifier & 0xFF];
+        clientDataActions[identifier & 0xFF] = null;
+        return removedAction;
     }
 
     public void addOnClientConnect(BiConsumer<ServerClient, Map<UUID, ServerClient>> action) {
@@ -196,21 +280,32 @@ public class Server implements Runnable {
 
         Log.info(this.getClass(), "Stopping server...");
 
-        for (ServerClient serverClient : clients.values()) {
+        for (ServerClient serverClient : new ArrayList<>(clients.values())) {
             serverClient.disconnect(ClientLeave, "Server has stopped.");
         }
         clients.clear();
 
         Log.debug(this.getClass(), "All clients removed. Stopping serivces...");
 
-        clientManager.shutdownNow();
+        if (clientManager != null) {
+            clientManager.shutdownNow();
+        }
+        if (clientWriters != null) {
+            clientWriters.shutdownNow();
+            clientWriters = null;
+        }
+        closeDatagramChannel();
         commandInterpreter.shutdownNow();
         clientAccepter.shutdownNow();
+        if (reactorGroup != null) {
+            reactorGroup.shutdown();
+            reactorGroup = null;
+        }
 
         Log.debug(this.getClass(), "All services stopped. Closing server socket...");
 
         try {
-            server.close();
+            closeServerSocket();
         } catch (IOException exception) {
             Log.error(this.getClass(), "Exception while closing server", exception);
         }
@@ -229,12 +324,90 @@ public class Server implements Runnable {
         if (!removedClient.isConnectionClosed()) {
             removedClient.shutdown();
         }
+        if (removedClient.getDatagramSession() != null) {
+            datagramClients.remove(removedClient.getDatagramSession().token());
+        }
 
         for (BiConsumer<ServerClient, Map<UUID, ServerClient>> clientDisconnectAction : clientDisconnectActions) {
             clientDisconnectAction.accept(removedClient, getClients());
         }
     }
 
+    /**
+     * Begins a message on the calling thread's reusable writer, for encoding once with {@link FrameWriter#toFrame()}
+     * and broadcasting.
+     */
+    public FrameWriter message(byte identifier) {
+        return FrameWriter.forCurrentThread().begin(identifier);
+    }
+
+    /** Writes everything queued for every client. Servers with a batched flush policy call this at the end of each tick. */
+    public void flushAll() {
+        for (ServerClient serverClient : clients.values()) {
+            serverClient.flushNow();
+        }
+    }
+
+    public void broadcast(Frame frame) {
+        broadcastExcept(frame, null);
+    }
+
+    /**
+     * Sends the same encoded {@code frame} to every client other than {@code excludedClient}. A failed write leaves the
+     * recipient's stream partway through a frame, so clients that fail are removed once the broadcast completes.
+     */
+    public void broadcastExcept(Frame frame, ServerClient excludedClient) {
+        broadcastExcept(frame, excludedClient, false);
+    }
+
+    public void broadcastDatagram(Frame frame) {
+        broadcastExcept(frame, null, true);
+    }
+
+    /**
+     * Sends {@code frame} to every client other than {@code excludedClient} as a datagram, which may be lost or arrive
+     * out of order. Only use datagrams for state that is sent again regularly.
+     *
+     * @see ServerClient#sendDatagram(Frame)
+     */
+    public void broadcastDatagramExcept(Frame frame, ServerClient excludedClient) {
+        broadcastExcept(frame, excludedClient, true);
+    }
+
+    private void broadcastExcept(Frame frame, ServerClient excludedClient, boolean asDatagram) {
+        List<ServerClient> failedClients = null;
+
+        for (ServerClient serverClient : clients.values()) {
+            if (serverClient == excludedClient) {
+                continue;
+            }
+
+            try {
+                if (asDatagram) {
+                    serverClient.sendDatagram(frame);
+                } else {
+                    serverClient.send(frame);
+                }
+            } catch (IOException exception) {
+                Log.debug(this.getClass(), "Couldn't send to client {}: {}", serverClient.getId(), exception.getMessage());
+                if (failedClients == null) {
+                    failedClients = new ArrayList<>();
+                }
+                failedClients.add(serverClient);
+            }
+        }
+
+        if (failedClients == null) {
+            return;
+        }
+
+        for (ServerClient failedClient : failedClients) {
+            if (clients.containsKey(failedClient.getId())) {
+                removeClient(failedClient.getId());
+            }
+        }
+    }
+
     void receive(UUID clientId, byte identifier, Throwable exception) {
         ServerClient client = clients.get(clientId);
         if (client == null) {
@@ -248,15 +421,13 @@ public class Server implements Runnable {
             return;
         }
 
-        clientDataActions.getOrDefault(
-                identifier,
-                new ClientDataAction(identifier, (currentClient, allClients) -> Log.warn(
-                        this.getClass(),
-                        "Invalid identifier {} from client {}",
-                        identifier,
-                        currentClient.getId()
-                ))
-        ).dataAction().accept(client, getClients());
+        ClientDataAction clientDataAction = clientDataActions[identifier & 0xFF];
+        if (clientDataAction == null) {
+            Log.warn(this.getClass(), "Invalid identifier {} from client {}", identifier, clientId);
+            return;
+        }
+
+        clientDataAction.dataAction().accept(client, clientsView);
     }
 
     @Override
@@ -267,6 +438,136 @@ public class Server implements Runnable {
         }
         isRunning = true;
         commandInterpreter.submit(this::interpretCommands);
+
+        if (serverConfig.transportType() == TransportType.Reactor) {
+            try {
+                reactorGroup = new ReactorGroup(serverConfig.reactorCount());
+            } catch (IOException exception) {
+                Log.error(this.getClass(), "Couldn't open reactors", exception);
+                shutdown();
+                return;
+            }
+            reactorGroup.start();
+            clientManager = serverConfig.executionMode().newListenerExecutor();
+        } else {
+            clientWriters = serverConfig.executionMode().newWriterExecutor();
+        }
+
+        if (serverConfig.datagramPort() != ServerConfig.NoDatagramPort) {
+            openDatagramChannel();
+        }
+    }
+
+    private void openDatagramChannel() {
+        // the datagram session's keys are handed out over the client's connection, which must be encrypted.
+        if (serverConfig.transportType() == TransportType.Reactor && sslContext == null) {
+            Log.warn(this.getClass(), "Datagram channel requires a secure server configuration, not opening it.");
+            return;
+        }
+
+        try {
+            datagramChannel = DatagramChannel.open();
+            datagramChannel.bind(new InetSocketAddress(serverConfig.localAddress(), serverConfig.datagramPort()));
+            datagramPort = ((InetSocketAddress) datagramChannel.getLocalAddress()).getPort();
+        } catch (IOException exception) {
+            Log.error(this.getClass(), "Couldn't open datagram channel", exception);
+            closeDatagramChannel();
+            return;
+        }
+
+        datagramReceiver = serverConfig.executionMode().newLoopExecutor();
+        DatagramChannel channel = datagramChannel;
+        datagramReceiver.submit(() -> receiveDatagrams(channel));
+        datagramTicker = Executors.newSingleThreadScheduledExecutor();
+        datagramTicker.scheduleAtFixedRate(this::tickDatagrams, DatagramSession.TickInterval, DatagramSession.TickInterval, TimeUnit.MILLISECONDS);
+        Log.debug(this.getClass(), "Datagram channel open on port {}.", datagramPort);
+    }
+
+    private void closeDatagramChannel() {
+        datagramClients.clear();
+        if (datagramReceiver != null) {
+            datagramReceiver.shutdownNow();
+            datagramReceiver = null;
+        }
+        if (datagramTicker != null) {
+            datagramTicker.shutdownNow();
+            datagramTicker = null;
+        }
+        if (datagramChannel == null) {
+            return;
+        }
+
+        try {
+            datagramChannel.close();
+        } catch (IOException exception) {
+            Log.error(this.getClass(), "Exception while closing datagram channel", exception);
+        }
+        datagramChannel = null;
+    }
+
+    private void receiveDatagrams(DatagramChannel channel) {
+        ByteBuffer packet = ByteBuffer.allocate(DatagramCipher.MaxDatagramSize);
+        while (channel.isOpen()) {
+            SocketAddress address;
+            packet.clear();
+            try {
+                address = channel.receive(packet);
+            } catch (ClosedChannelException exception) {
+                break;
+            } catch (IOException exception) {
+                Log.debug(this.getClass(), "Couldn't receive datagram: {}", exception.getMessage());
+                continue;
+            }
+            packet.flip();
+
+            if (packet.remaining() < DatagramCipher.HeaderSize) {
+                continue;
+            }
+
+            ServerClient client = datagramClients.get(DatagramCipher.peekToken(packet));
+            if (client != null) {
+                client.receiveDatagram(packet, address);
+            }
+        }
+    }
+
+    private void tickDatagrams() {
+        for (ServerClient client : datagramClients.values()) {
+            client.tickDatagrams();
+        }
+    }
+
+    /**
+     * Tells a new client that it was accepted. With a datagram channel open, this also gives the client its datagram
+     * session, which is only ever sent over the client's encrypted connection, and the deliveries declared by the
+     * server's client actions.
+     */
+    private void sendClientAccepted(ServerClient serverClient) throws IOException {
+        FrameWriter accepted = serverClient.message(ClientAccepted).writeBoolean(datagramChannel != null);
+        if (datagramChannel != null) {
+            DatagramCipher datagramCipher;
+            try {
+                datagramCipher = DatagramCipher.generate();
+            } catch (GeneralSecurityException exception) {
+                throw new IOException("Couldn't create datagram session for client " + serverClient.getId() + ".", exception);
+            }
+
+            serverClient.openDatagramSession(datagramCipher, datagramChannel);
+            datagramClients.put(datagramCipher.token(), serverClient);
+            accepted.writeInt(datagramPort);
+            datagramCipher.writeTo(accepted);
+
+            Map<Byte, Delivery> deliveries = new HashMap<>();
+            for (ClientDataAction clientDataAction : clientDataActions) {
+                if (clientDataAction == null) {
+                    continue;
+                }
+                deliveries.put(clientDataAction.identifier(), clientDataAction.delivery());
+            }
+            Delivery.write(accepted, deliveries);
+        }
+
+        serverClient.send(accepted);
     }
 
     public void allowClients() {
@@ -280,8 +581,15 @@ public class Server implements Runnable {
             return;
         }
 
+        if (serverConfig.transportType() == TransportType.Reactor) {
+            isAcceptingClients = true;
+            setAcceptInterest(SelectionKey.OP_ACCEPT);
+            Log.info(this.getClass(), "Now accepting clients...");
+            return;
+        }
+
         if (clientAccepter.isShutdown()) {
-            clientAccepter = Executors.newSingleThreadExecutor();
+            clientAccepter = serverConfig.executionMode().newLoopExecutor();
         }
         clientAccepter.submit(this::acceptClients);
         isAcceptingClients = true;
@@ -298,11 +606,41 @@ public class Server implements Runnable {
             return;
         }
 
-        clientAccepter.shutdownNow();
+        if (serverConfig.transportType() == TransportType.Reactor) {
+            setAcceptInterest(0);
+        } else {
+            clientAccepter.shutdownNow();
+        }
         isAcceptingClients = false;
         Log.warn(this.getClass(), "Server no longer accepting clients.");
     }
 
+    private void setAcceptInterest(int interestOps) {
+        if (acceptKey == null) {
+            if (interestOps != 0) {
+                reactorGroup.boss().register(serverChannel, interestOps, new SelectionHandler() {
+                    @Override
+                    public void registered(SelectionKey key) {
+                        acceptKey = key;
+                    }
+
+                    @Override
+                    public void handle(SelectionKey key) throws IOException {
+                        acceptChannels(key);
+                    }
+                });
+            }
+            return;
+        }
+
+        SelectionKey currentKey = acceptKey;
+        reactorGroup.boss().execute(() -> {
+            if (currentKey.isValid()) {
+                currentKey.interestOps(interestOps);
+            }
+        });
+    }
+
     private void interpretCommands() {
         Scanner serverInput = new Scanner(System.in);
         Log.info(this.getClass(), "Now accepting commands...");
@@ -325,7 +663,7 @@ public class Server implements Runnable {
         if (clientManager != null) {
             clientManager.shutdownNow();
         }
-        clientManager = Executors.newWorkStealingPool();
+        clientManager = serverConfig.executionMode().newListenerExecutor();
 
         while (isAcceptingClients) {
             try {
@@ -338,26 +676,93 @@ public class Server implements Runnable {
         }
     }
 
-    private synchronized void acceptClient() throws IOException {
+    private void acceptClient() throws IOException {
         Log.trace(this.getClass(), "Accepting new client...");
         Socket client = server.accept();
+
+        acceptLock.lock();
+        try {
+            registerClient(client);
+        } finally {
+            acceptLock.unlock();
+        }
+    }
+
+    private void registerClient(Socket client) throws IOException {
         UUID clientID = UUID.randomUUID();
         Log.trace(this.getClass(), "Received client, given id {}", clientID);
 
-        ServerClient serverClient = new ServerClient(client, clientID);
+        ServerClient serverClient = new ServerClient(
+                client,
+                clientID,
+                serverConfig.outboundQueueCapacity(),
+                serverConfig.overflowPolicy(),
+                serverConfig.flushPolicy(),
+                clientWriters
+        );
         Log.trace(this.getClass(), "Successful connection on {}", clientID);
 
         clients.put(clientID, serverClient);
-        serverClient.out().writeByte(ClientAccepted);
-        serverClient.out().flush();
+        sendClientAccepted(serverClient);
         Log.debug(this.getClass(), "client {} connected.", clientID);
 
         for (BiConsumer<ServerClient, Map<UUID, ServerClient>> clientConnectAction : clientConnectActions) {
             clientConnectAction.accept(serverClient, getClients());
         }
+        // don't hold the client's handshake back until the next flush.
+        serverClient.flushNow();
         Log.trace(this.getClass(), "Completed all connect actions for client {}. Adding listener...", clientID);
 
         clientManager.submit(() -> serverClient.listen(this));
         Log.trace(this.getClass(), "Listener added to {}.", clientID);
     }
+
+    private void acceptChannels(SelectionKey key) throws IOException {
+        if (!isAcceptingClients) {
+            key.interestOps(0);
+            return;
+        }
+
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            try {
+                acceptChannel(channel);
+            } catch (IOException exception) {
+                Log.warn(this.getClass(), "Couldn't accept client: {}", exception.getMessage());
+                channel.close();
+            }
+        }
+    }
+
+    private void acceptChannel(SocketChannel channel) throws IOException {
+        UUID clientID = UUID.randomUUID();
+        Log.trace(this.getClass(), "Received client, given id {}", clientID);
+
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        ChannelConnection connection = sslContext != null
+                ? new SecureChannelConnection(channel, reactorGroup.next(), SecureEngineFactory.getServerEngine(sslContext), bufferPool, clientManager)
+                : new ChannelConnection(channel, reactorGroup.next());
+        ServerClient serverClient = new ServerClient(
+                connection,
+                clientID,
+                serverConfig.outboundQueueCapacity(),
+                serverConfig.overflowPolicy(),
+                serverConfig.flushPolicy()
+        );
+        Log.trace(this.getClass(), "Successful connection on {}", clientID);
+
+        clients.put(clientID, serverClient);
+        sendClientAccepted(serverClient);
+        Log.debug(this.getClass(), "client {} connected.", clientID);
+
+        for (BiConsumer<ServerClient, Map<UUID, ServerClient>> clientConnectAction : clientConnectActions) {
+            clientConnectAction.accept(serverClient, getClients());
+        }
+        // don't hold the client's handshake back until the next flush.
+        serverClient.flushNow();
+        Log.trace(this.getClass(), "Completed all connect actions for client {}. Adding listener...", clientID);
+
+        serverClient.listen(this, clientManager);
+        Log.trace(this.getClass(), "Listener added to {}.", clientID);
+    }
 }
@@ -2,118 +2,493 @@ package network.server;
 
 import tech.fastj.logging.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import network.message.Delivery;
+import network.message.FlushPolicy;
+import network.message.Frame;
+import network.message.FrameDecoder;
+import network.message.FramePool;
+import network.message.FrameReader;
+import network.message.FrameWriter;
+import network.message.Frames;
+import network.message.MessageReader;
+import network.security.DatagramCipher;
+import network.security.DatagramSession;
+import network.transport.ChannelConnection;
+import network.transport.ChannelOutputStream;
 
 public class ServerClient {
 
+    private static final int MaxPendingWriteBytes = 64 * 1024;
+    private static final int OutputBufferSize = 8 * 1024;
+
     private final Socket socket;
-    private final ObjectInputStream in;
-    private final ObjectOutputStream out;
+    private final FrameReader frameReader;
+    private final OutputStream out;
+    private MessageReader in;
     private final UUID uuid;
+    private final ReentrantLock outLock = new ReentrantLock();
+    private final ReentrantLock listenLock = new ReentrantLock();
+    private final ReentrantLock dispatchLock = new ReentrantLock();
+
+    private final OutboundQueue outbound;
+    /** Keeps as many frames as the outbound queue holds, so a steady stream of messages reuses the same frames. */
+    private final FramePool outboundFrames;
+    private final FlushPolicy flushPolicy;
+    private final Executor writer;
+    private final AtomicBoolean isWriteScheduled = new AtomicBoolean();
+    private final Runnable outboundWriter = this::writeOutbound;
+    private volatile boolean isFlushRequested;
+    private volatile boolean isDisconnecting;
+
+    private final ChannelConnection connection;
+    private final FrameDecoder frameDecoder;
+    private final AtomicBoolean isDispatchScheduled;
+    private volatile Server server;
+    private ExecutorService dispatcher;
+
+    private DatagramSession datagramSession;
+    private volatile SocketAddress datagramAddress;
+    private final MessageReader datagramReader = new MessageReader();
+    private final List<ByteBuffer> datagramFrames = new ArrayList<>();
+    private volatile Delivery[] deliveries = Delivery.streamOnly();
 
     public ServerClient(Socket socketClient, UUID id) throws IOException {
+        this(socketClient, id, ServerConfig.DefaultOutboundQueueCapacity, OverflowPolicy.Disconnect, FlushPolicy.Immediate, null);
+    }
+
+    /**
+     * @param writer runs the client's writer, which drains its outbound queue. If {@code null}, messages are written
+     *               on the sending thread instead.
+     */
+    ServerClient(Socket socketClient, UUID id, int outboundQueueCapacity, OverflowPolicy overflowPolicy, FlushPolicy flushPolicy, Executor writer) throws IOException {
         socket = socketClient;
         uuid = id;
-        out = new ObjectOutputStream(socket.getOutputStream());
-        in = new ObjectInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream(), OutputBufferSize);
+        frameReader = new FrameReader(new BufferedInputStream(socket.getInputStream()));
+        outbound = new OutboundQueue(outboundQueueCapacity, overflowPolicy);
+        outboundFrames = new FramePool(outboundQueueCapacity);
+        this.flushPolicy = flushPolicy;
+        this.writer = writer;
+
+        connection = null;
+        frameDecoder = null;
+        isDispatchScheduled = null;
+    }
+
+    /** The client's writer runs on the connection's reactor, which pauses it while the socket can't keep up. */
+    ServerClient(ChannelConnection channelConnection, UUID id, int outboundQueueCapacity, OverflowPolicy overflowPolicy, FlushPolicy flushPolicy) {
+        connection = channelConnection;
+        socket = connection.socket();
+        uuid = id;
+        frameReader = null;
+        outbound = new OutboundQueue(outboundQueueCapacity, overflowPolicy);
+        outboundFrames = new FramePool(outboundQueueCapacity);
+        this.flushPolicy = flushPolicy;
+        writer = connection.reactor()::execute;
+        // the writer only pauses partway through a due write, so resume it regardless of the flush policy.
+        connection.setDrainListener(() -> {
+            if (!outbound.isEmpty()) {
+                scheduleWrite();
+            }
+        });
+
+        frameDecoder = new FrameDecoder(this::scheduleDispatch);
+        connection.setInboundHandler(frameDecoder);
+        isDispatchScheduled = new AtomicBoolean();
+        out = new ChannelOutputStream(connection);
     }
 
     public UUID getId() {
         return uuid;
     }
 
-    public void send(byte identifier, Object... data) throws IOException {
-        synchronized (out) {
-            out.writeByte(identifier);
-
-            for (Object value : data) {
-                if (value instanceof String s) {
-                    out.writeUTF(s);
-                } else if (value instanceof Integer i) {
-                    out.writeInt(i);
-                } else if (value instanceof Double d) {
-                    out.writeDouble(d);
-                } else if (value instanceof Long l) {
-                    out.writeLong(l);
-                } else if (value instanceof Float f) {
-                    out.writeFloat(f);
-                } else if (value instanceof Byte b) {
-                    out.writeByte(b);
-                } else if (value instanceof Boolean b) {
-                    out.writeBoolean(b);
-                } else if (value instanceof Character c) {
-                    out.writeChar(c);
-                } else if (value instanceof Short s) {
-                    out.writeShort(s);
-                } else if (value instanceof byte[] bytes) {
-                    out.write(bytes);
-                } else {
-                    out.writeObject(value);
-                }
+    /**
+     * Begins a message on the calling thread's reusable writer. Send it with {@link #send(FrameWriter)} before
+     * beginning another message on the same thread.
+     */
+    public FrameWriter message(byte identifier) {
+        return FrameWriter.forCurrentThread().begin(identifier);
+    }
+
+    /** Sends {@code message} with the delivery the client declared for it. */
+    public void send(FrameWriter message) throws IOException {
+        Delivery delivery = deliveries[message.identifier() & 0xFF];
+        if (delivery != Delivery.Stream && canSendDatagram(message.size() + Frames.MaxLengthPrefixSize)) {
+            datagramSession.send(message.finish(), delivery);
+            return;
+        }
+
+        sendStream(outboundFrames.copyOf(message));
+    }
+
+    /**
+     * Sends {@code frame} with the delivery the client declared for it. Frames sent over the stream are queued for the
+     * client's writer, so a slow client never holds up the sending thread. Under a batched flush policy, they wait for
+     * {@link #flushNow()} or for the flush threshold to be reached.
+     *
+     * @throws IOException if the client is disconnected, or was disconnected because its outbound queue overflowed.
+     */
+    public void send(Frame frame) throws IOException {
+        Delivery delivery = deliveries[frame.identifier() & 0xFF];
+        if (delivery != Delivery.Stream && canSendDatagram(frame.size())) {
+            sendDatagram(frame, delivery);
+            return;
+        }
+
+        sendStream(frame);
+    }
+
+    private void sendStream(Frame frame) throws IOException {
+        if (isConnectionClosed()) {
+            frame.release();
+            throw new IOException("Client " + uuid + " is disconnected.");
+        }
+
+        if (!outbound.offer(frame)) {
+            frame.release();
+            Log.warn(this.getClass(), "Outbound queue of client {} overflowed, disconnecting.", uuid);
+            outbound.clear();
+            shutdown();
+            throw new IOException("Outbound queue of client " + uuid + " overflowed.");
+        }
+
+        if (isWriteDue()) {
+            scheduleWrite();
+        }
+    }
+
+    /** Writes everything queued for the client, regardless of the flush policy. */
+    public void flushNow() {
+        if (outbound.isEmpty()) {
+            return;
+        }
+
+        isFlushRequested = true;
+        scheduleWrite();
+    }
+
+    /**
+     * Sends {@code message} as an unreliable datagram, regardless of the client's declarations. Until the client's
+     * first datagram arrives, or if the message is too big for a datagram, it's sent over the stream instead.
+     */
+    public void sendDatagram(FrameWriter message) throws IOException {
+        if (!canSendDatagram(message.size() + Frames.MaxLengthPrefixSize)) {
+            sendStream(outboundFrames.copyOf(message));
+            return;
+        }
+
+        datagramSession.send(message.finish(), Delivery.Unreliable);
+    }
+
+    /** @see #sendDatagram(FrameWriter) */
+    public void sendDatagram(Frame frame) throws IOException {
+        if (!canSendDatagram(frame.size())) {
+            sendStream(frame);
+            return;
+        }
+
+        sendDatagram(frame, Delivery.Unreliable);
+    }
+
+    private void sendDatagram(Frame frame, Delivery delivery) throws IOException {
+        try {
+            datagramSession.send(frame, delivery);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /** @return whether the client's datagrams have reached the server, so the server can send datagrams back. */
+    public boolean hasDatagramChannel() {
+        return datagramAddress != null;
+    }
+
+    /** @return the round-trip time of the client's datagrams in nanoseconds, or 0 if it isn't known yet. */
+    public long getRoundTripTime() {
+        return datagramSession != null ? datagramSession.getRoundTripTime() : 0;
+    }
+
+    /** Messages that can't go out as datagrams are sent over the stream, which also handles closed clients. */
+    private boolean canSendDatagram(int frameSize) {
+        return datagramAddress != null && frameSize <= DatagramSession.MaxFrameSize && !isConnectionClosed();
+    }
+
+    /** Binds the client to a datagram session, whose token and key are sent to it with {@link Server#ClientAccepted}. */
+    void openDatagramSession(DatagramCipher datagramCipher, DatagramChannel datagramChannel) {
+        datagramSession = new DatagramSession(datagramCipher, packet -> {
+            try {
+                datagramChannel.send(packet, datagramAddress);
+            } catch (IOException exception) {
+                // datagrams are allowed to go missing, so the connection itself is left alone.
+                Log.debug(this.getClass(), "Couldn't send datagram to client {}: {}", uuid, exception.getMessage());
             }
+        });
+    }
 
-            out.flush();
+    DatagramSession getDatagramSession() {
+        return datagramSession;
+    }
+
+    /**
+     * Handles a datagram sealed with the client's token. Authentic datagrams also update where the client's datagrams
+     * are sent, in case its address changed.
+     */
+    void receiveDatagram(ByteBuffer packet, SocketAddress address) {
+        if (!datagramSession.receive(packet, datagramFrames)) {
+            return;
+        }
+        datagramAddress = address;
+
+        for (ByteBuffer frame : datagramFrames) {
+            MessageReader message;
+            try {
+                message = datagramReader.wrapFrame(frame);
+            } catch (IOException exception) {
+                Log.debug(this.getClass(), "Bad datagram from client {}: {}", uuid, exception.getMessage());
+                continue;
+            }
+
+            // the client's first datagram only tells the server where to send datagrams.
+            if (message.identifier() != Server.ClientAccepted && server != null) {
+                handle(message);
+            }
+        }
+    }
+
+    /** Resends the client's unacknowledged reliable datagrams. */
+    void tickDatagrams() {
+        if (datagramAddress == null || isConnectionClosed()) {
+            return;
+        }
+
+        try {
+            datagramSession.tick();
+        } catch (IOException exception) {
+            Log.debug(this.getClass(), "Couldn't resend datagrams to client {}: {}", uuid, exception.getMessage());
         }
     }
 
+    public void send(byte identifier, Object... data) throws IOException {
+        FrameWriter message = message(identifier);
+        for (Object value : data) {
+            message.writeValue(value);
+        }
+
+        send(message);
+    }
+
     public void disconnect(byte identifier, String reason) {
         if (isConnectionClosed()) {
             return;
         }
 
+        isDisconnecting = true;
         try {
-            out.writeByte(identifier);
-            out.writeUTF(reason);
-            out.flush();
-            shutdown();
+            Frame frame = outboundFrames.copyOf(message(identifier).writeUTF(reason));
+            if (!outbound.offer(frame)) {
+                outbound.clear();
+                outbound.offer(frame);
+            }
         } catch (IOException exception) {
             exception.printStackTrace();
         }
+
+        // write everything queued before the disconnect message, then the message itself.
+        writeOutbound();
+        if (!isConnectionClosed()) {
+            shutdown();
+        }
     }
 
-    public void shutdown() {
+    /** @return the number of messages waiting to be written to the client. */
+    public int getQueueDepth() {
+        return outbound.size();
+    }
+
+    private void scheduleWrite() {
+        if (writer == null) {
+            writeOutbound();
+        } else if (isWriteScheduled.compareAndSet(false, true)) {
+            try {
+                writer.execute(outboundWriter);
+            } catch (RejectedExecutionException exception) {
+                // the server is shutting down, and disconnects clients by writing their queues directly.
+                isWriteScheduled.set(false);
+            }
+        }
+    }
+
+    private void writeOutbound() {
+        outLock.lock();
         try {
-            socket.close();
+            isFlushRequested = false;
+            Frame frame;
+            while (canWrite() && (frame = outbound.poll()) != null) {
+                try {
+                    frame.writeTo(out);
+                } finally {
+                    frame.release();
+                }
+            }
+            out.flush();
         } catch (IOException exception) {
-            exception.printStackTrace();
+            Log.debug(this.getClass(), "Couldn't write to client {}: {}", uuid, exception.getMessage());
+            outbound.clear();
+            if (!isConnectionClosed()) {
+                shutdown();
+            }
+        } finally {
+            outLock.unlock();
         }
 
-        Log.info(this.getClass(), "client {} disconnected.", uuid);
+        if (writer == null) {
+            return;
+        }
+
+        isWriteScheduled.set(false);
+        // frames may have been queued between the last poll and releasing the write flag.
+        if (!outbound.isEmpty() && canWrite() && isWriteDue()) {
+            scheduleWrite();
+        }
+    }
+
+    private boolean isWriteDue() {
+        return !flushPolicy.isBatched() || isFlushRequested || outbound.queuedBytes() >= flushPolicy.flushThreshold();
+    }
+
+    /** A reactor connection buffers whatever its socket can't take yet, so stop feeding it once that backs up. */
+    private boolean canWrite() {
+        return connection == null || isDisconnecting || connection.pendingWriteBytes() < MaxPendingWriteBytes;
     }
 
-    synchronized void listen(Server server) {
-        while (!socket.isClosed()) {
+    public void shutdown() {
+        if (connection != null) {
+            connection.close();
+        } else {
             try {
-                byte identifier = in.readByte();
-                server.receive(uuid, identifier, null);
+                socket.close();
             } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        }
+
+        Log.info(this.getClass(), "client {} disconnected.", uuid);
+    }
+
+    void listen(Server server) {
+        this.server = server;
+        listenLock.lock();
+        try {
+            while (!socket.isClosed()) {
+                MessageReader message;
                 try {
-                    if (in.read() == -1) {
-                        server.removeClient(uuid);
-                        break;
-                    }
-                } catch (IOException exception1) {
-                    server.receive(uuid, Server.ClientLeave, exception);
+                    message = frameReader.next();
+                } catch (IOException exception) {
+                    handleListenFailure(server, exception);
+                    break;
+                }
+
+                handle(message);
+            }
+        } finally {
+            listenLock.unlock();
+        }
+    }
+
+    /**
+     * Starts dispatching frames decoded by the client's reactor. Messages are dispatched on {@code dispatcher}, which
+     * is only occupied while the client has received frames.
+     */
+    void listen(Server server, ExecutorService dispatcher) {
+        this.server = server;
+        this.dispatcher = dispatcher;
+        connection.register();
+    }
+
+    private void scheduleDispatch() {
+        if (dispatcher != null && isDispatchScheduled.compareAndSet(false, true)) {
+            dispatcher.submit(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        do {
+            MessageReader message;
+            while ((message = frameDecoder.poll()) != null) {
+                handle(message);
+            }
+
+            if (frameDecoder.isClosed()) {
+                if (frameDecoder.getCloseCause() != null) {
+                    handleListenFailure(server, frameDecoder.getCloseCause());
+                } else if (server.getClients().containsKey(uuid)) {
                     server.removeClient(uuid);
                 }
-                break;
+                return;
+            }
+
+            isDispatchScheduled.set(false);
+            // frames may have arrived between the last poll and releasing the dispatch flag.
+        } while ((frameDecoder.hasFrames() || frameDecoder.isClosed()) && isDispatchScheduled.compareAndSet(false, true));
+    }
+
+    /** Messages from the client's connection and its datagrams are handled one at a time. */
+    private void handle(MessageReader message) {
+        // the client replies to being accepted with the deliveries it declared for its messages.
+        if (message.identifier() == Server.ClientAccepted) {
+            try {
+                deliveries = Delivery.read(message);
+            } catch (IOException exception) {
+                Log.warn(this.getClass(), "Bad delivery declarations from client {}: {}", uuid, exception.getMessage());
             }
+            return;
+        }
+
+        dispatchLock.lock();
+        try {
+            in = message;
+            server.receive(uuid, message.identifier(), null);
+        } finally {
+            dispatchLock.unlock();
         }
     }
 
-    public boolean isConnectionClosed() {
-        return socket.isClosed() || socket.isOutputShutdown();
+    private void handleListenFailure(Server server, IOException exception) {
+        if (!server.getClients().containsKey(uuid)) {
+            return;
+        }
+
+        if (exception instanceof EOFException) {
+            server.removeClient(uuid);
+        } else {
+            server.receive(uuid, Server.ClientLeave, exception);
+        }
     }
 
-    public ObjectInputStream in() {
-        return in;
+    public boolean isConnectionClosed() {
+        return socket.isClosed() || socket.isOutputShutdown() || (connection != null && connection.isClosed());
     }
 
-    public ObjectOutputStream out() {
-        return out;
+    /** @return a reader over the payload of the message currently being handled. */
+    public MessageReader in() {
+        return in;
     }
 }
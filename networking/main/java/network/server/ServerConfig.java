@@ -2,13 +2,81 @@ package network.server;
 
 import java.net.InetAddress;
 
-public record ServerConfig(int port, int backlog, InetAddress localAddress) {
+import network.message.FlushPolicy;
+import network.message.Frame;
+import network.transport.ExecutionMode;
+import network.transport.TransportType;
+
+public record ServerConfig(int port, int backlog, InetAddress localAddress, TransportType transportType, int reactorCount,
+                           ExecutionMode executionMode, int outboundQueueCapacity, OverflowPolicy overflowPolicy,
+                           FlushPolicy flushPolicy, int datagramPort) {
+
+    public static final int DefaultBacklog = 50;
+    public static final int DefaultReactorCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    public static final int DefaultOutboundQueueCapacity = 256;
+    public static final int NoDatagramPort = -1;
+
+    public ServerConfig {
+        if (reactorCount < 1) {
+            throw new IllegalArgumentException("The reactor count cannot be less than 1.");
+        }
+        if (outboundQueueCapacity < 1) {
+            throw new IllegalArgumentException("The outbound queue capacity cannot be less than 1.");
+        }
+        if (datagramPort < NoDatagramPort || datagramPort > 0xFFFF) {
+            throw new IllegalArgumentException("The datagram port must be a valid port, or " + NoDatagramPort + ".");
+        }
+    }
+
+    public ServerConfig(int port, int backlog, InetAddress localAddress) {
+        this(
+                port,
+                backlog,
+                localAddress,
+                TransportType.Blocking,
+                DefaultReactorCount,
+                ExecutionMode.Platform,
+                DefaultOutboundQueueCapacity,
+                OverflowPolicy.Disconnect,
+                FlushPolicy.Immediate,
+                NoDatagramPort
+        );
+    }
 
     public ServerConfig(int port, int backlog) {
         this(port, backlog, null);
     }
 
     public ServerConfig(int port) {
-        this(port, 50, null);
+        this(port, DefaultBacklog, null);
+    }
+
+    public ServerConfig withTransport(TransportType transportType) {
+        return withTransport(transportType, reactorCount);
+    }
+
+    public ServerConfig withTransport(TransportType transportType, int reactorCount) {
+        return new ServerConfig(port, backlog, localAddress, transportType, reactorCount, executionMode, outboundQueueCapacity, overflowPolicy, flushPolicy, datagramPort);
+    }
+
+    public ServerConfig withExecutionMode(ExecutionMode executionMode) {
+        return new ServerConfig(port, backlog, localAddress, transportType, reactorCount, executionMode, outboundQueueCapacity, overflowPolicy, flushPolicy, datagramPort);
+    }
+
+    public ServerConfig withOutboundQueue(int outboundQueueCapacity, OverflowPolicy overflowPolicy) {
+        return new ServerConfig(port, backlog, localAddress, transportType, reactorCount, executionMode, outboundQueueCapacity, overflowPolicy, flushPolicy, datagramPort);
+    }
+
+    /** With a batched policy, {@link Server#flushAll()} should be called at the end of every tick. */
+    public ServerConfig withFlushPolicy(FlushPolicy flushPolicy) {
+        return new ServerConfig(port, backlog, localAddress, transportType, reactorCount, executionMode, outboundQueueCapacity, overflowPolicy, flushPolicy, datagramPort);
+    }
+
+    /**
+     * Opens a datagram channel on {@code datagramPort} next to every client's TLS connection, for messages sent with
+     * {@link ServerClient#sendDatagram(Frame)}. A port of 0 picks any free port.
+     */
+    public ServerConfig withDatagramChannel(int datagramPort) {
+        return new ServerConfig(port, backlog, localAddress, transportType, reactorCount, executionMode, outboundQueueCapacity, overflowPolicy, flushPolicy, datagramPort);
     }
 }
@@ -0,0 +1,50 @@
+package network.transport;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of equally-sized direct buffers. Buffers are only held for the length of a single operation, so a handful of
+ * them can serve thousands of mostly-idle connections.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+    private final Queue<ByteBuffer> buffers;
+    private final AtomicInteger pooledBuffers;
+
+    public BufferPool(int bufferSize, int maxPooledBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.buffers = new ConcurrentLinkedQueue<>();
+        this.pooledBuffers = new AtomicInteger();
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /** Returns a cleared buffer of at least {@link #bufferSize()} bytes. */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        pooledBuffers.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || pooledBuffers.get() >= maxPooledBuffers) {
+            return;
+        }
+
+        buffer.clear();
+        pooledBuffers.incrementAndGet();
+        buffers.add(buffer);
+    }
+}
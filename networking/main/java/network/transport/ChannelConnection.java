@@ -0,0 +1,301 @@
+package network.transport;
+
+import tech.fastj.logging.Log;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+public class ChannelConnection implements SelectionHandler {
+
+    private static final int InitialWriteBufferSize = 4 * 1024;
+    /** How long {@link #close()} waits for pending writes, so a peer that stops reading can't hold the connection open. */
+    private static final long CloseDrainTimeoutMillis = 5_000L;
+
+    protected final SocketChannel channel;
+    protected final Reactor reactor;
+
+    private final Object writeLock = new Object();
+    private ByteBuffer pendingWrites;
+    private boolean isWriteInterested;
+    private boolean isReadPaused;
+
+    private InboundHandler inboundHandler;
+    private Runnable drainListener;
+    private volatile SelectionKey key;
+    private volatile boolean isClosing;
+    private volatile boolean isClosed;
+
+    public ChannelConnection(SocketChannel channel, Reactor reactor) throws IOException {
+        this.channel = channel;
+        this.reactor = reactor;
+
+        channel.configureBlocking(false);
+        pendingWrites = ByteBuffer.allocate(InitialWriteBufferSize);
+    }
+
+    public Socket socket() {
+        return channel.socket();
+    }
+
+    public Reactor reactor() {
+        return reactor;
+    }
+
+    public boolean isClosed() {
+        return isClosed || isClosing;
+    }
+
+    public void setInboundHandler(InboundHandler inboundHandler) {
+        this.inboundHandler = inboundHandler;
+    }
+
+    /** Sets a listener to run on the reactor thread whenever a backlog of pending writes has been fully written. */
+    public void setDrainListener(Runnable drainListener) {
+        this.drainListener = drainListener;
+    }
+
+    /** @return the number of bytes waiting for the channel to become writable. */
+    public int pendingWriteBytes() {
+        synchronized (writeLock) {
+            return pendingWrites.position();
+        }
+    }
+
+    /** Starts reading from the channel. The inbound handler must be set beforehand. */
+    public void register() {
+        if (inboundHandler == null) {
+            throw new IllegalStateException("The inbound handler must be set before registering.");
+        }
+
+        reactor.register(channel, SelectionKey.OP_READ, this);
+    }
+
+    @Override
+    public void registered(SelectionKey key) {
+        synchronized (writeLock) {
+            this.key = key;
+            if (pendingWrites.position() > 0) {
+                isWriteInterested = true;
+                applyInterestOps(key);
+            }
+        }
+    }
+
+    @Override
+    public void handle(SelectionKey key) throws IOException {
+        if (key.isValid() && key.isWritable()) {
+            onWritable();
+        }
+        if (key.isValid() && key.isReadable()) {
+            onReadable();
+        }
+    }
+
+    @Override
+    public void closed(Throwable cause) {
+        close(cause instanceof IOException ioException ? ioException : null);
+    }
+
+    /**
+     * Queues {@code data} for writing. The bytes are written straight through when nothing is pending; anything the
+     * socket can't take right away is written by the reactor once the channel becomes writable again.
+     * <p>
+     * This never blocks on the network, so it is safe to call from reactor threads.
+     */
+    public void write(ByteBuffer data) throws IOException {
+        synchronized (writeLock) {
+            if (isClosed || isClosing) {
+                throw new ClosedChannelException();
+            }
+
+            onOutbound(data);
+        }
+    }
+
+    /**
+     * Closes the connection once any pending writes have been written, or once {@link #CloseDrainTimeoutMillis} have
+     * passed, whichever comes first.
+     */
+    public void close() {
+        synchronized (writeLock) {
+            if (isClosed || isClosing) {
+                return;
+            }
+
+            if (pendingWrites.position() > 0) {
+                isClosing = true;
+                reactor.schedule(this::closeUndrained, CloseDrainTimeoutMillis);
+                return;
+            }
+        }
+
+        close(null);
+    }
+
+    private void closeUndrained() {
+        int undrainedBytes;
+        synchronized (writeLock) {
+            if (isClosed) {
+                return;
+            }
+            undrainedBytes = pendingWrites.position();
+        }
+
+        Log.debug(this.getClass(), "Closing with {} bytes still unwritten", undrainedBytes);
+        close(new IOException("Peer didn't read the last " + undrainedBytes + " bytes before the connection closed."));
+    }
+
+    protected void close(IOException cause) {
+        synchronized (writeLock) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            isClosing = false;
+        }
+
+        if (key != null) {
+            key.cancel();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException exception) {
+            Log.error(this.getClass(), "Exception while closing channel", exception);
+        }
+
+        if (inboundHandler != null) {
+            inboundHandler.onClose(cause);
+        }
+    }
+
+    /** Reads whatever the channel has available, and hands it off to the inbound handler. */
+    protected void onReadable() throws IOException {
+        ByteBuffer readBuffer = reactor.readBuffer();
+        int bytesRead = channel.read(readBuffer);
+        if (bytesRead == -1) {
+            close(null);
+            return;
+        }
+
+        readBuffer.flip();
+        onInbound(readBuffer);
+    }
+
+    /** Passes bytes read off the wire to the inbound handler. Transformations (e.g. TLS) hook in here. */
+    protected void onInbound(ByteBuffer data) throws IOException {
+        inboundHandler.onData(data);
+    }
+
+    /**
+     * Writes outgoing bytes to the channel. Transformations (e.g. TLS) hook in here. Callers must hold the write lock.
+     */
+    protected void onOutbound(ByteBuffer data) throws IOException {
+        writeToChannel(data);
+    }
+
+    protected void onWritable() throws IOException {
+        boolean isDrained;
+        boolean shouldClose;
+        synchronized (writeLock) {
+            flushPending();
+            isDrained = pendingWrites.position() == 0;
+            shouldClose = isClosing && isDrained;
+        }
+
+        if (shouldClose) {
+            close(null);
+        } else if (isDrained && drainListener != null) {
+            drainListener.run();
+        }
+    }
+
+    /** Writes raw bytes to the channel, queueing what can't be written yet. Callers must hold the write lock. */
+    protected void writeToChannel(ByteBuffer data) throws IOException {
+        if (pendingWrites.position() == 0) {
+            channel.write(data);
+            if (!data.hasRemaining()) {
+                return;
+            }
+        }
+
+        ensureWriteCapacity(data.remaining());
+        pendingWrites.put(data);
+        setWriteInterest(true);
+    }
+
+    protected Object writeLock() {
+        return writeLock;
+    }
+
+    private void flushPending() throws IOException {
+        pendingWrites.flip();
+        try {
+            channel.write(pendingWrites);
+        } finally {
+            pendingWrites.compact();
+        }
+
+        setWriteInterest(pendingWrites.position() > 0);
+    }
+
+    private void ensureWriteCapacity(int additionalBytes) {
+        if (pendingWrites.remaining() >= additionalBytes) {
+            return;
+        }
+
+        int newCapacity = Math.max(pendingWrites.capacity() * 2, pendingWrites.position() + additionalBytes);
+        ByteBuffer newPendingWrites = ByteBuffer.allocate(newCapacity);
+        pendingWrites.flip();
+        newPendingWrites.put(pendingWrites);
+        pendingWrites = newPendingWrites;
+    }
+
+    private void setWriteInterest(boolean writeInterested) {
+        if (isWriteInterested == writeInterested) {
+            return;
+        }
+
+        SelectionKey currentKey = key;
+        if (currentKey == null) {
+            // registered() picks up pending writes once the channel is registered.
+            return;
+        }
+
+        isWriteInterested = writeInterested;
+        if (reactor.inReactorThread()) {
+            applyInterestOps(currentKey);
+        } else {
+            reactor.execute(() -> {
+                synchronized (writeLock) {
+                    applyInterestOps(currentKey);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops or resumes reading from the channel, leaving unread data in the socket so the peer is held back by TCP rather
+     * than buffered here. Only call on the reactor thread, once the connection is registered.
+     */
+    protected void setReadPaused(boolean readPaused) {
+        synchronized (writeLock) {
+            isReadPaused = readPaused;
+            SelectionKey currentKey = key;
+            if (currentKey != null) {
+                applyInterestOps(currentKey);
+            }
+        }
+    }
+
+    private void applyInterestOps(SelectionKey currentKey) {
+        if (currentKey.isValid()) {
+            int readOps = isReadPaused ? 0 : SelectionKey.OP_READ;
+            currentKey.interestOps(isWriteInterested ? readOps | SelectionKey.OP_WRITE : readOps);
+        }
+    }
+}
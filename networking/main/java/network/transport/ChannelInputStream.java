@@ -0,0 +1,162 @@
+package network.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adapts bytes pushed in by a reactor into a blocking {@link InputStream}. Readers only block while a message is
+ * partially received, so idle connections don't hold on to a thread.
+ */
+public class ChannelInputStream extends InputStream implements InboundHandler {
+
+    private static final int InitialCapacity = 4 * 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private final Runnable dataListener;
+
+    private byte[] data = new byte[InitialCapacity];
+    private int readIndex;
+    private int writeIndex;
+    private boolean isClosed;
+    private IOException closeCause;
+
+    public ChannelInputStream(Runnable dataListener) {
+        this.dataListener = dataListener;
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return isClosed && readIndex == writeIndex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public IOException getCloseCause() {
+        return closeCause;
+    }
+
+    @Override
+    public void onData(ByteBuffer incoming) {
+        lock.lock();
+        try {
+            ensureCapacity(incoming.remaining());
+            int length = incoming.remaining();
+            incoming.get(data, writeIndex, length);
+            writeIndex += length;
+            dataAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        dataListener.run();
+    }
+
+    @Override
+    public void onClose(IOException cause) {
+        lock.lock();
+        try {
+            isClosed = true;
+            closeCause = cause;
+            dataAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        dataListener.run();
+    }
+
+    @Override
+    public int read() throws IOException {
+        lock.lock();
+        try {
+            if (!awaitData()) {
+                return -1;
+            }
+
+            return data[readIndex++] & 0xFF;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        lock.lock();
+        try {
+            if (!awaitData()) {
+                return -1;
+            }
+
+            int bytesRead = Math.min(length, writeIndex - readIndex);
+            System.arraycopy(data, readIndex, bytes, offset, bytesRead);
+            readIndex += bytesRead;
+            return bytesRead;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int available() {
+        lock.lock();
+        try {
+            return writeIndex - readIndex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        onClose(null);
+    }
+
+    private boolean awaitData() throws IOException {
+        while (readIndex == writeIndex) {
+            if (isClosed) {
+                if (closeCause != null) {
+                    throw closeCause;
+                }
+                return false;
+            }
+
+            try {
+                dataAvailable.await();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data.");
+            }
+        }
+
+        return true;
+    }
+
+    private void ensureCapacity(int additionalBytes) {
+        if (readIndex == writeIndex) {
+            readIndex = 0;
+            writeIndex = 0;
+        }
+
+        if (data.length - writeIndex >= additionalBytes) {
+            return;
+        }
+
+        int unread = writeIndex - readIndex;
+        byte[] destination = data.length - unread >= additionalBytes ? data : new byte[Math.max(data.length * 2, unread + additionalBytes)];
+        System.arraycopy(data, readIndex, destination, 0, unread);
+        data = destination;
+        readIndex = 0;
+        writeIndex = unread;
+    }
+}
@@ -0,0 +1,61 @@
+package network.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/** Buffers written bytes, and hands them to a {@link ChannelConnection} on each flush. */
+public class ChannelOutputStream extends OutputStream {
+
+    private static final int BufferSize = 8 * 1024;
+
+    private final ChannelConnection connection;
+    private final ByteBuffer buffer;
+
+    public ChannelOutputStream(ChannelConnection connection) {
+        this.connection = connection;
+        this.buffer = ByteBuffer.allocate(BufferSize);
+    }
+
+    @Override
+    public synchronized void write(int value) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) value);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+
+        buffer.flip();
+        try {
+            connection.write(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        connection.close();
+    }
+}
@@ -0,0 +1,70 @@
+package network.transport;
+
+import tech.fastj.logging.Log;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public enum ExecutionMode {
+    /** Listener loops share a work-stealing pool; accept and command loops get a thread each. */
+    Platform,
+    /**
+     * Every listener, accept and command loop gets its own virtual thread. Falls back to one platform thread per loop
+     * when the runtime doesn't support virtual threads (Java 20 and below), with a warning the first time it does.
+     */
+    Virtual;
+
+    private static final MethodHandle VirtualThreadExecutor = findVirtualThreadExecutor();
+    private static final AtomicBoolean HasWarnedOfFallback = new AtomicBoolean();
+
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreadExecutor != null;
+    }
+
+    /** Creates an executor for long-running, mostly-blocked loops such as per-client listeners. */
+    public ExecutorService newListenerExecutor() {
+        return this == Virtual ? newVirtualThreadExecutor() : Executors.newWorkStealingPool();
+    }
+
+    /** Creates an executor for short bursts of work that may block, such as writing queued messages to a socket. */
+    public ExecutorService newWriterExecutor() {
+        return this == Virtual ? newVirtualThreadExecutor() : Executors.newCachedThreadPool();
+    }
+
+    /** Creates an executor for a single long-running loop. */
+    public ExecutorService newLoopExecutor() {
+        return this == Virtual ? newVirtualThreadExecutor() : Executors.newSingleThreadExecutor();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        if (VirtualThreadExecutor == null) {
+            if (!HasWarnedOfFallback.getAndSet(true)) {
+                Log.warn(ExecutionMode.class, "Virtual threads aren't supported by Java {}, so Virtual loops run on platform threads instead.", Runtime.version().feature());
+            }
+            return Executors.newCachedThreadPool();
+        }
+
+        try {
+            return (ExecutorService) VirtualThreadExecutor.invokeExact();
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Couldn't create a virtual thread executor", throwable);
+        }
+    }
+
+    private static MethodHandle findVirtualThreadExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(
+                    Executors.class,
+                    "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class)
+            );
+        } catch (NoSuchMethodException | IllegalAccessException exception) {
+            Log.debug(ExecutionMode.class, "Virtual threads unavailable, using platform threads instead.");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package network.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface InboundHandler {
+
+    /** Consumes all remaining bytes of {@code data}. Called on the connection's reactor thread. */
+    void onData(ByteBuffer data) throws IOException;
+
+    void onClose(IOException cause);
+}
@@ -0,0 +1,167 @@
+package network.transport;
+
+import tech.fastj.logging.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+public class Reactor implements Runnable {
+
+    private static final int ReadBufferSize = 16 * 1024;
+
+    private final Selector selector;
+    private final ByteBuffer readBuffer;
+    private final Queue<Runnable> tasks;
+    /** Tasks waiting for their deadline, soonest first. Only touched by the reactor thread. */
+    private final PriorityQueue<ScheduledTask> scheduledTasks;
+    private volatile Thread reactorThread;
+    private volatile boolean isRunning;
+
+    public Reactor() throws IOException {
+        selector = Selector.open();
+        tasks = new ConcurrentLinkedQueue<>();
+        scheduledTasks = new PriorityQueue<>(Comparator.comparingLong(ScheduledTask::deadline));
+        readBuffer = ByteBuffer.allocateDirect(ReadBufferSize);
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    public boolean inReactorThread() {
+        return Thread.currentThread() == reactorThread;
+    }
+
+    /**
+     * A read buffer shared by every connection on this reactor. Only usable from the reactor thread, and only for the
+     * duration of a single read.
+     */
+    public ByteBuffer readBuffer() {
+        return readBuffer.clear();
+    }
+
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /** Runs {@code task} on the reactor thread once {@code delayMillis} have passed. Safe to call from any thread. */
+    public void schedule(Runnable task, long delayMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        execute(() -> scheduledTasks.add(new ScheduledTask(deadline, task)));
+    }
+
+    public void register(SelectableChannel channel, int interestOps, SelectionHandler handler) {
+        execute(() -> {
+            try {
+                SelectionKey key = channel.register(selector, interestOps, handler);
+                handler.registered(key);
+            } catch (ClosedChannelException exception) {
+                handler.closed(exception);
+            }
+        });
+    }
+
+    public void shutdown() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        if (isRunning) {
+            Log.warn(this.getClass(), "Reactor already running.");
+            return;
+        }
+
+        reactorThread = Thread.currentThread();
+        isRunning = true;
+
+        while (isRunning) {
+            try {
+                selector.select(this::handleKey, selectTimeoutMillis());
+                runTasks();
+                runScheduledTasks();
+            } catch (IOException exception) {
+                Log.error(this.getClass(), "Selector error", exception);
+            }
+        }
+
+        closeAll();
+        reactorThread = null;
+    }
+
+    private void handleKey(SelectionKey key) {
+        SelectionHandler handler = (SelectionHandler) key.attachment();
+        try {
+            handler.handle(key);
+        } catch (IOException | CancelledKeyException exception) {
+            key.cancel();
+            handler.closed(exception);
+        } catch (RuntimeException exception) {
+            // a bug in one connection's handler closes that connection, rather than the reactor and all of its others.
+            Log.error(this.getClass(), "Selection handler failed", exception);
+            key.cancel();
+            handler.closed(new IOException("Selection handler failed", exception));
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException exception) {
+                Log.error(this.getClass(), "Reactor task failed", exception);
+            }
+        }
+    }
+
+    /** @return how long the selector may wait before the next scheduled task is due, where 0 waits indefinitely. */
+    private long selectTimeoutMillis() {
+        ScheduledTask next = scheduledTasks.peek();
+        if (next == null) {
+            return 0L;
+        }
+
+        // rounded up, so the selector doesn't wake just short of the deadline.
+        return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(next.deadline() - System.nanoTime()) + 1L);
+    }
+
+    private void runScheduledTasks() {
+        long now = System.nanoTime();
+        while (!scheduledTasks.isEmpty() && scheduledTasks.peek().deadline() - now <= 0L) {
+            try {
+                scheduledTasks.poll().task().run();
+            } catch (RuntimeException exception) {
+                Log.error(this.getClass(), "Reactor task failed", exception);
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            key.cancel();
+            ((SelectionHandler) key.attachment()).closed(null);
+        }
+
+        try {
+            selector.close();
+        } catch (IOException exception) {
+            Log.error(this.getClass(), "Exception while closing selector", exception);
+        }
+    }
+
+    private record ScheduledTask(long deadline, Runnable task) {
+    }
+}
@@ -0,0 +1,61 @@
+package network.transport;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReactorGroup {
+
+    private final Reactor[] reactors;
+    private final AtomicInteger nextReactor;
+    private ExecutorService reactorThreads;
+
+    public ReactorGroup(int reactorCount) throws IOException {
+        if (reactorCount < 1) {
+            throw new IllegalArgumentException("The reactor count cannot be less than 1.");
+        }
+
+        reactors = new Reactor[reactorCount];
+        for (int i = 0; i < reactorCount; i++) {
+            reactors[i] = new Reactor();
+        }
+        nextReactor = new AtomicInteger();
+    }
+
+    public int size() {
+        return reactors.length;
+    }
+
+    /** The first reactor, which also services server accepts. */
+    public Reactor boss() {
+        return reactors[0];
+    }
+
+    /** Round-robins connections across the group's reactors. */
+    public Reactor next() {
+        return reactors[Math.floorMod(nextReactor.getAndIncrement(), reactors.length)];
+    }
+
+    public void start() {
+        if (reactorThreads != null) {
+            return;
+        }
+
+        reactorThreads = Executors.newFixedThreadPool(reactors.length);
+        for (Reactor reactor : reactors) {
+            reactorThreads.submit(reactor);
+        }
+    }
+
+    public void shutdown() {
+        for (Reactor reactor : reactors) {
+            reactor.shutdown();
+        }
+
+        if (reactorThreads != null) {
+            reactorThreads.shutdown();
+            reactorThreads = null;
+        }
+    }
+}
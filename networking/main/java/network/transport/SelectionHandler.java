@@ -0,0 +1,15 @@
+package network.transport;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+public interface SelectionHandler {
+
+    void handle(SelectionKey key) throws IOException;
+
+    default void registered(SelectionKey key) {
+    }
+
+    default void closed(Throwable cause) {
+    }
+}
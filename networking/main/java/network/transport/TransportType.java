@@ -0,0 +1,8 @@
+package network.transport;
+
+public enum TransportType {
+    /** One blocking socket, and one listener thread, per connection. */
+    Blocking,
+    /** Non-blocking channels, multiplexed across a fixed group of selector threads. */
+    Reactor
+}
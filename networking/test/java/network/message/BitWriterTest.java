@@ -0,0 +1,97 @@
+package network.message;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BitWriterTest {
+
+    private final FrameWriter frame = new FrameWriter();
+    private final BitWriter writer = new BitWriter(frame);
+
+    @Test
+    void valuesRoundTripAcrossByteBoundaries() throws IOException {
+        frame.begin((byte) 1);
+        writer.write(5, 3)
+                .writeBoolean(true)
+                .write(0x1FF, 9)
+                .write(-1, Integer.SIZE)
+                .write(Integer.MIN_VALUE, Integer.SIZE)
+                .writeBoolean(false)
+                .write(0xABCD, 16);
+
+        BitReader reader = read(writer.finish().finish());
+        assertEquals(5, reader.read(3));
+        assertTrue(reader.readBoolean());
+        assertEquals(0x1FF, reader.read(9));
+        assertEquals(-1, reader.read(Integer.SIZE));
+        assertEquals(Integer.MIN_VALUE, reader.read(Integer.SIZE));
+        assertFalse(reader.readBoolean());
+        assertEquals(0xABCD, reader.read(16));
+    }
+
+    @Test
+    void onlyTheLowestBitsAreWritten() throws IOException {
+        frame.begin((byte) 1);
+        writer.write(0b1111_0101, 4).write(0b11, 1);
+
+        BitReader reader = read(writer.finish().finish());
+        assertEquals(0b0101, reader.read(4));
+        assertEquals(1, reader.read(1));
+    }
+
+    @Test
+    void packsMostSignificantBitFirstAndPadsWithZeros() throws IOException {
+        frame.begin((byte) 1);
+        writer.write(0b101, 3).write(0b1, 1).write(0b11, 2);
+
+        MessageReader message = new MessageReader().wrapFrame(writer.finish().finish());
+        assertEquals(1, message.remaining());
+        assertEquals(0b1011_1100, message.readUnsignedByte());
+    }
+
+    @Test
+    void finishStartsTheNextValueOnAFreshByte() throws IOException {
+        frame.begin((byte) 1);
+        writer.write(1, 1);
+        writer.finish();
+        writer.write(0xFF, 8);
+
+        MessageReader message = new MessageReader().wrapFrame(writer.finish().finish());
+        assertEquals(0b1000_0000, message.readUnsignedByte());
+        assertEquals(0xFF, message.readUnsignedByte());
+        assertEquals(0, message.remaining());
+    }
+
+    @Test
+    void rejectsBitCountsOutsideAnInt() throws IOException {
+        frame.begin((byte) 1);
+        assertThrows(IllegalArgumentException.class, () -> writer.write(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> writer.write(0, Integer.SIZE + 1));
+
+        BitReader reader = read(writer.write(0, 8).finish().finish());
+        assertThrows(IllegalArgumentException.class, () -> reader.read(0));
+        assertThrows(IllegalArgumentException.class, () -> reader.read(Integer.SIZE + 1));
+    }
+
+    @Test
+    void readingPastTheFrameFails() throws IOException {
+        frame.begin((byte) 1);
+        BitReader reader = read(writer.write(0b1010, 4).finish().finish());
+
+        // the padding is still readable, but nothing after it.
+        assertEquals(0b1010_0000, reader.read(8));
+        assertThrows(EOFException.class, () -> reader.read(1));
+    }
+
+    private static BitReader read(ByteBuffer frame) throws IOException {
+        return new BitReader(new MessageReader().wrapFrame(frame));
+    }
+}
@@ -0,0 +1,141 @@
+package network.message;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameDecoderTest {
+
+    private int batchesHeard;
+    private final FrameDecoder decoder = new FrameDecoder(() -> batchesHeard++);
+
+    @Test
+    void decodesFramesSplitAtEveryByte() throws IOException {
+        ByteBuffer stream = encode(new byte[] {1, 2, 3}, new byte[300], new byte[] {4});
+
+        while (stream.hasRemaining()) {
+            decoder.onData(stream.slice().limit(1));
+            stream.position(stream.position() + 1);
+        }
+
+        assertArrayEquals(new byte[] {1, 2, 3}, next());
+        assertArrayEquals(new byte[300], next());
+        assertArrayEquals(new byte[] {4}, next());
+        assertNull(decoder.poll());
+        assertEquals(3, batchesHeard);
+    }
+
+    @Test
+    void decodesFramesOfEverySizeInOrder() throws IOException {
+        Random random = new Random(4);
+        List<byte[]> sent = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            // mostly small frames, with some bigger than a whole batch.
+            byte[] frame = new byte[random.nextInt(20) == 0 ? 1 + random.nextInt(20_000) : 1 + random.nextInt(200)];
+            random.nextBytes(frame);
+            sent.add(frame);
+        }
+
+        ByteBuffer stream = encode(sent.toArray(new byte[0][]));
+        List<byte[]> received = new ArrayList<>();
+        while (stream.hasRemaining()) {
+            int readSize = Math.min(stream.remaining(), 1 + random.nextInt(10_000));
+            decoder.onData(stream.slice().limit(readSize));
+            stream.position(stream.position() + readSize);
+
+            // the poller sometimes falls behind the reads.
+            for (int polls = random.nextInt(4); polls > 0 && decoder.hasFrames(); polls--) {
+                received.add(next());
+            }
+        }
+        while (decoder.hasFrames()) {
+            received.add(next());
+        }
+
+        assertEquals(sent.size(), received.size());
+        for (int i = 0; i < sent.size(); i++) {
+            assertArrayEquals(sent.get(i), received.get(i), "frame " + i);
+        }
+    }
+
+    @Test
+    void readerStopsAtTheEndOfItsFrame() throws IOException {
+        decoder.onData(encode(new byte[] {5, 0, 0, 0, 1}, new byte[] {6, 0, 0, 0, 2}));
+
+        MessageReader message = decoder.poll();
+        assertEquals(5, message.identifier());
+        assertEquals(1, message.readInt());
+        assertThrows(EOFException.class, message::readByte);
+
+        assertEquals(2, decoder.poll().readInt());
+    }
+
+    @Test
+    void rejectsEmptyFrames() {
+        assertThrows(IOException.class, () -> decoder.onData(ByteBuffer.wrap(new byte[] {0})));
+    }
+
+    @Test
+    void rejectsOversizedFrames() {
+        ByteBuffer oversized = ByteBuffer.allocate(Frames.MaxLengthPrefixSize);
+        Frames.putLengthPrefix(oversized, 0, Frames.MaxFrameSize + 1);
+
+        assertThrows(IOException.class, () -> decoder.onData(oversized));
+    }
+
+    @Test
+    void keepsFramesDecodedBeforeABadFrame() throws IOException {
+        ByteBuffer good = encode(new byte[] {1, 2});
+        ByteBuffer stream = ByteBuffer.allocate(good.remaining() + 1).put(good).put((byte) 0).flip();
+
+        assertThrows(IOException.class, () -> decoder.onData(stream));
+        assertArrayEquals(new byte[] {1, 2}, next());
+    }
+
+    @Test
+    void closesOnceEveryFrameIsPolled() throws IOException {
+        decoder.onData(encode(new byte[] {1}));
+        IOException cause = new IOException("reset");
+        decoder.onClose(cause);
+
+        assertFalse(decoder.isClosed());
+        assertArrayEquals(new byte[] {1}, next());
+        assertTrue(decoder.isClosed());
+        assertEquals(cause, decoder.getCloseCause());
+    }
+
+    /** @return the frame's identifier and payload. */
+    private byte[] next() throws IOException {
+        MessageReader message = decoder.poll();
+        byte[] frame = new byte[1 + message.remaining()];
+        frame[0] = message.identifier();
+        message.readFully(frame, 1, frame.length - 1);
+        return frame;
+    }
+
+    private static ByteBuffer encode(byte[]... frames) {
+        int size = 0;
+        for (byte[] frame : frames) {
+            size += Frames.lengthPrefixSize(frame.length) + frame.length;
+        }
+
+        ByteBuffer stream = ByteBuffer.allocate(size);
+        for (byte[] frame : frames) {
+            Frames.putLengthPrefix(stream, stream.position(), frame.length);
+            stream.position(stream.position() + Frames.lengthPrefixSize(frame.length)).put(frame);
+        }
+        return stream.flip();
+    }
+}
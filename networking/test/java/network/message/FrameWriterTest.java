@@ -0,0 +1,126 @@
+package network.message;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FrameWriterTest {
+
+    private final FrameWriter writer = new FrameWriter();
+    private final MessageReader reader = new MessageReader();
+
+    @Test
+    void typedWritesRoundTrip() throws IOException {
+        writer.begin((byte) 42)
+                .writeBoolean(true)
+                .writeByte(-3)
+                .writeShort(-1234)
+                .writeChar('\u00e9')
+                .writeInt(Integer.MIN_VALUE)
+                .writeLong(Long.MAX_VALUE)
+                .writeFloat(1.5f)
+                .writeDouble(-0.25)
+                .writeUTF("snow \u2744")
+                .write(new byte[] {7, 8, 9});
+
+        MessageReader message = reader.wrapFrame(writer.finish());
+        assertEquals(42, message.identifier());
+        assertTrue(message.readBoolean());
+        assertEquals(-3, message.readByte());
+        assertEquals(-1234, message.readShort());
+        assertEquals('\u00e9', message.readChar());
+        assertEquals(Integer.MIN_VALUE, message.readInt());
+        assertEquals(Long.MAX_VALUE, message.readLong());
+        assertEquals(1.5f, message.readFloat());
+        assertEquals(-0.25, message.readDouble());
+        assertEquals("snow \u2744", message.readUTF());
+        byte[] bytes = new byte[3];
+        message.readFully(bytes);
+        assertArrayEquals(new byte[] {7, 8, 9}, bytes);
+        assertEquals(0, message.remaining());
+    }
+
+    @Test
+    void lengthPrefixOnlyTakesTheBytesItNeeds() throws IOException {
+        ByteBuffer small = writer.begin((byte) 1).writeInt(5).finish();
+        assertEquals(1 + 1 + Integer.BYTES, small.remaining());
+
+        writer.begin((byte) 1);
+        for (int i = 0; i < 1000; i++) {
+            writer.writeInt(i);
+        }
+        ByteBuffer large = writer.finish();
+        assertEquals(2 + 1 + 1000 * Integer.BYTES, large.remaining());
+
+        MessageReader message = reader.wrapFrame(large);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, message.readInt());
+        }
+    }
+
+    @Test
+    void rejectsFramesOverTheMaximumSize() {
+        writer.begin((byte) 1).write(new byte[Frames.MaxFrameSize]);
+
+        assertThrows(IOException.class, writer::finish);
+    }
+
+    @Test
+    void rejectsValuesWithoutATypedWrite() {
+        writer.begin((byte) 1);
+
+        assertThrows(IllegalArgumentException.class, () -> writer.writeValue(new Object()));
+        assertThrows(IllegalArgumentException.class, () -> writer.writeValue(null));
+    }
+
+    @Test
+    void eachThreadReusesItsOwnWriter() throws InterruptedException {
+        FrameWriter[] otherThreadWriter = new FrameWriter[1];
+        Thread otherThread = new Thread(() -> otherThreadWriter[0] = FrameWriter.forCurrentThread());
+        otherThread.start();
+        otherThread.join();
+
+        assertSame(FrameWriter.forCurrentThread(), FrameWriter.forCurrentThread());
+        assertNotSame(FrameWriter.forCurrentThread(), otherThreadWriter[0]);
+    }
+
+    @Test
+    void typedWritesDoNotAllocate() throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        FrameWriter threadWriter = FrameWriter.forCurrentThread();
+        int messages = 100_000;
+        writeTransforms(threadWriter, messages);
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        writeTransforms(threadWriter, messages);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // reading the counter may allocate a little itself, but nothing close to once per message.
+        assertTrue(allocated < messages, allocated + " bytes allocated over " + messages + " messages");
+    }
+
+    private static void writeTransforms(FrameWriter writer, int messages) throws IOException {
+        for (int i = 0; i < messages; i++) {
+            writer.begin((byte) 3)
+                    .coalesceBy(i & 7)
+                    .writeInt(i & 7)
+                    .writeFloat(i * 0.5f)
+                    .writeFloat(i * -0.5f)
+                    .writeFloat(i % 360)
+                    .finish();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package network.message;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FramesTest {
+
+    @Test
+    void lengthPrefixGrowsAtVarintBoundaries() {
+        assertEquals(1, Frames.lengthPrefixSize(1));
+        assertEquals(1, Frames.lengthPrefixSize(0x7F));
+        assertEquals(2, Frames.lengthPrefixSize(0x80));
+        assertEquals(2, Frames.lengthPrefixSize(0x3FFF));
+        assertEquals(3, Frames.lengthPrefixSize(0x4000));
+        assertEquals(3, Frames.lengthPrefixSize(Frames.MaxFrameSize));
+    }
+
+    @Test
+    void lengthPrefixRoundTrips() {
+        ByteBuffer buffer = ByteBuffer.allocate(Frames.MaxLengthPrefixSize);
+        for (int frameSize = 1; frameSize <= Frames.MaxFrameSize; frameSize++) {
+            buffer.clear();
+            Frames.putLengthPrefix(buffer, 0, frameSize);
+            buffer.limit(Frames.lengthPrefixSize(frameSize));
+
+            assertEquals(frameSize, Frames.getLengthPrefix(buffer));
+            assertEquals(Frames.lengthPrefixSize(frameSize), buffer.position());
+        }
+    }
+
+    @Test
+    void truncatedLengthPrefixNeedsMoreBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(Frames.MaxLengthPrefixSize);
+        Frames.putLengthPrefix(buffer, 0, 0x4000);
+
+        for (int available = 0; available < 3; available++) {
+            buffer.position(0).limit(available);
+            assertEquals(-1, Frames.getLengthPrefix(buffer));
+            assertEquals(0, buffer.position(), "a partial prefix shouldn't be consumed");
+        }
+    }
+
+    @Test
+    void overlongLengthPrefixIsOversized() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01});
+
+        int frameSize = Frames.getLengthPrefix(buffer);
+        assertEquals(Integer.MAX_VALUE, frameSize);
+    }
+
+    @Test
+    void nextFrameSplitsWholeFrames() throws Exception {
+        ByteBuffer stream = ByteBuffer.allocate(64);
+        FrameWriter writer = new FrameWriter();
+        stream.put(writer.begin((byte) 1).writeInt(7).finish());
+        stream.put(writer.begin((byte) 2).writeLong(9L).finish());
+        stream.flip();
+
+        ByteBuffer first = Frames.nextFrame(stream);
+        ByteBuffer second = Frames.nextFrame(stream);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(1 + 1 + Integer.BYTES, first.remaining());
+        assertEquals(1 + 1 + Long.BYTES, second.remaining());
+        assertNull(Frames.nextFrame(stream));
+
+        MessageReader reader = new MessageReader();
+        assertEquals(7, reader.wrapFrame(first).readInt());
+        assertEquals(2, reader.wrapFrame(second).identifier());
+    }
+
+    @Test
+    void nextFrameLeavesPartialFrames() throws Exception {
+        ByteBuffer frame = new FrameWriter().begin((byte) 1).writeInt(7).finish();
+        ByteBuffer partial = frame.slice().limit(frame.remaining() - 1);
+
+        assertNull(Frames.nextFrame(partial));
+        assertEquals(0, partial.position());
+    }
+}
@@ -0,0 +1,55 @@
+package network.message;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageReaderTest {
+
+    @Test
+    void readLineStopsAtEachKindOfTerminator() throws IOException {
+        MessageReader message = read("one\ntwo\r\nthree\rfour");
+
+        assertEquals("one", message.readLine());
+        assertEquals("two", message.readLine());
+        assertEquals("three", message.readLine());
+        assertEquals("four", message.readLine());
+        assertNull(message.readLine());
+    }
+
+    @Test
+    void readLineKeepsEmptyLinesAndLeavesTheRest() throws IOException {
+        MessageReader message = read("\n\rrest");
+
+        assertEquals("", message.readLine());
+        assertEquals("", message.readLine());
+        assertEquals('r', message.readByte());
+        assertEquals(3, message.remaining());
+    }
+
+    @Test
+    void readLineReadsBytesAsLatin1() throws IOException {
+        MessageReader message = new MessageReader().wrapFrame(new FrameWriter().begin((byte) 1).writeByte(0xE9).finish());
+
+        assertEquals("\u00e9", message.readLine());
+    }
+
+    @Test
+    void typedReadsStopAtTheEndOfTheFrame() throws IOException {
+        MessageReader message = new MessageReader().wrapFrame(new FrameWriter().begin((byte) 1).writeShort(7).finish());
+
+        assertThrows(EOFException.class, message::readInt);
+        assertEquals(7, message.readShort());
+    }
+
+    private static MessageReader read(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        return new MessageReader().wrapFrame(new FrameWriter().begin((byte) 1).write(bytes).finish());
+    }
+}
@@ -0,0 +1,79 @@
+package network.message;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QuantizerTest {
+
+    @Test
+    void rangeUsesTheFewestBitsForItsSteps() {
+        Quantizer position = Quantizer.range(0f, 10f, 0.01f);
+
+        assertEquals(10, position.bits());
+        assertEquals(0.01f, position.precision());
+        assertEquals(1000, position.quantize(10f));
+    }
+
+    @Test
+    void rangeRoundTripsWithinHalfAStep() {
+        Quantizer position = Quantizer.range(-50f, 50f, 0.05f);
+
+        for (float value = -50f; value <= 50f; value += 0.37f) {
+            float restored = position.dequantize(position.quantize(value));
+            assertEquals(value, restored, position.precision() / 2f + 1e-4f, "value " + value);
+        }
+    }
+
+    @Test
+    void rangeClampsValuesOutsideIt() {
+        Quantizer position = Quantizer.range(-1f, 1f, 0.5f);
+
+        assertEquals(0, position.quantize(-100f));
+        assertEquals(4, position.quantize(100f));
+        assertEquals(-1f, position.dequantize(position.quantize(-100f)));
+        assertEquals(1f, position.dequantize(position.quantize(100f)));
+    }
+
+    @Test
+    void anglesWrapAroundAFullTurn() {
+        Quantizer rotation = Quantizer.angle(1f);
+
+        assertEquals(9, rotation.bits());
+        assertEquals(360f / 512, rotation.precision());
+        assertEquals(0, rotation.quantize(360f));
+        assertEquals(rotation.quantize(90f), rotation.quantize(450f));
+        assertEquals(rotation.quantize(359f), rotation.quantize(-1f));
+        assertEquals(359f, rotation.dequantize(rotation.quantize(-1f)), rotation.precision() / 2f);
+    }
+
+    @Test
+    void rejectsRangesItCannotCover() {
+        assertThrows(IllegalArgumentException.class, () -> Quantizer.range(1f, 1f, 0.1f));
+        assertThrows(IllegalArgumentException.class, () -> Quantizer.range(1f, 0f, 0.1f));
+        assertThrows(IllegalArgumentException.class, () -> Quantizer.range(0f, 1f, 0f));
+        assertThrows(IllegalArgumentException.class, () -> Quantizer.range(0f, Float.NaN, 0.1f));
+        assertThrows(IllegalArgumentException.class, () -> Quantizer.angle(0f));
+        assertThrows(IllegalArgumentException.class, () -> Quantizer.angle(360f));
+    }
+
+    @Test
+    void valuesRoundTripThroughBits() throws IOException {
+        Quantizer position = Quantizer.range(0f, 1000f, 0.1f);
+        Quantizer rotation = Quantizer.angle(0.5f);
+        FrameWriter frame = new FrameWriter().begin((byte) 1);
+        BitWriter writer = new BitWriter(frame);
+
+        position.write(writer, 123.45f);
+        rotation.write(writer, 271.3f);
+        position.write(writer, 2000f);
+
+        BitReader reader = new BitReader(new MessageReader().wrapFrame(writer.finish().finish()));
+        assertEquals(123.45f, position.read(reader), position.precision() / 2f + 1e-4f);
+        assertEquals(271.3f, rotation.read(reader), rotation.precision() / 2f);
+        assertEquals(1000f, position.read(reader), 1e-3f);
+    }
+}
@@ -0,0 +1,200 @@
+package network.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import network.message.Delivery;
+import network.message.FrameWriter;
+import network.message.MessageReader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatagramSessionTest {
+
+    private final Queue<ByteBuffer> toClient = new ArrayDeque<>();
+    private final Queue<ByteBuffer> toServer = new ArrayDeque<>();
+    private DatagramCipher serverCipher;
+    private DatagramCipher clientCipher;
+    private DatagramSession server;
+    private DatagramSession client;
+
+    @BeforeEach
+    void openSession() throws IOException, GeneralSecurityException {
+        serverCipher = DatagramCipher.generate();
+        FrameWriter keyMessage = new FrameWriter().begin((byte) 0);
+        serverCipher.writeTo(keyMessage);
+        clientCipher = DatagramCipher.read(new MessageReader().wrapFrame(keyMessage.finish()));
+
+        server = new DatagramSession(serverCipher, packet -> toClient.add(copy(packet)));
+        client = new DatagramSession(clientCipher, packet -> toServer.add(copy(packet)));
+    }
+
+    @Test
+    void unreliableMessagesArrive() throws IOException {
+        server.send(frame(1), Delivery.Unreliable);
+
+        assertEquals(List.of(1), receive(client, toClient.poll()));
+    }
+
+    @Test
+    void rejectsFramesThatDontFitADatagram() throws IOException {
+        ByteBuffer tooBig = copy(new FrameWriter().begin((byte) 1).write(new byte[DatagramSession.MaxFrameSize]).finish());
+
+        assertThrows(IllegalArgumentException.class, () -> server.send(tooBig, Delivery.ReliableOrdered));
+        assertThrows(IllegalArgumentException.class, () -> server.send(frame(1), Delivery.Stream));
+    }
+
+    @Test
+    void acknowledgedMessagesAreNotResent() throws Exception {
+        server.send(frame(1), Delivery.ReliableUnordered);
+        assertEquals(List.of(1), receive(client, toClient.poll()));
+
+        client.tick();
+        assertTrue(receive(server, toServer.poll()).isEmpty());
+        assertTrue(server.getRoundTripTime() > 0);
+
+        Thread.sleep(250);
+        server.tick();
+        assertTrue(toClient.isEmpty(), "the acknowledged message was resent");
+    }
+
+    @Test
+    void resendsOnceTheRetransmitTimeoutPasses() throws Exception {
+        server.send(frame(1), Delivery.ReliableUnordered);
+        ByteBuffer delayed = toClient.poll();
+
+        server.tick();
+        assertTrue(toClient.isEmpty(), "resent before the retransmit timeout");
+
+        Thread.sleep(150);
+        server.tick();
+        ByteBuffer resent = toClient.poll();
+        assertEquals(List.of(1), receive(client, resent));
+
+        // the first copy turning up late must not deliver the message twice.
+        assertTrue(receive(client, delayed).isEmpty());
+    }
+
+    @Test
+    void resendsRightAwayWhenLaterPacketsAreAcknowledged() throws IOException {
+        server.send(frame(1), Delivery.ReliableUnordered);
+        toClient.poll();
+        for (int i = 0; i < 3; i++) {
+            server.send(frame(10 + i), Delivery.Unreliable);
+            receive(client, toClient.poll());
+        }
+
+        // any packet from the client acknowledges the last three, so the first is known to be lost.
+        client.send(frame(0), Delivery.Unreliable);
+        receive(server, toServer.poll());
+        server.tick();
+
+        assertEquals(List.of(1), receive(client, toClient.poll()));
+    }
+
+    @Test
+    void acknowledgementsCoverEveryPacketInTheWindow() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            server.send(frame(i), Delivery.Unreliable);
+        }
+        ByteBuffer first = toClient.poll();
+        toClient.poll();
+        receive(client, toClient.poll());
+        receive(client, toClient.poll());
+        receive(client, first);
+
+        assertEquals(3, clientCipher.highestSequence());
+        assertEquals(0b1011L, clientCipher.receivedWindow());
+    }
+
+    @Test
+    void orderedMessagesWaitForEarlierOnes() throws IOException {
+        for (int i = 1; i <= 3; i++) {
+            server.send(frame(i), Delivery.ReliableOrdered);
+        }
+        ByteBuffer first = toClient.poll();
+        ByteBuffer second = toClient.poll();
+        ByteBuffer third = toClient.poll();
+
+        assertTrue(receive(client, third).isEmpty());
+        assertTrue(receive(client, second).isEmpty());
+        assertEquals(List.of(1, 2, 3), receive(client, first));
+    }
+
+    @Test
+    void unorderedMessagesDontWait() throws IOException {
+        server.send(frame(1), Delivery.ReliableUnordered);
+        server.send(frame(2), Delivery.ReliableUnordered);
+        ByteBuffer first = toClient.poll();
+
+        assertEquals(List.of(2), receive(client, toClient.poll()));
+        assertEquals(List.of(1), receive(client, first));
+    }
+
+    @Test
+    void replayedPacketsAreRejected() throws IOException {
+        server.send(frame(1), Delivery.Unreliable);
+        ByteBuffer packet = toClient.poll();
+
+        assertTrue(client.receive(packet.duplicate(), new ArrayList<>()));
+        assertFalse(client.receive(packet.duplicate(), new ArrayList<>()));
+    }
+
+    @Test
+    void packetsOlderThanTheReplayWindowAreRejected() throws IOException {
+        for (int i = 0; i <= Long.SIZE; i++) {
+            server.send(frame(i), Delivery.Unreliable);
+        }
+        ByteBuffer oldest = toClient.poll();
+        while (toClient.size() > 1) {
+            toClient.poll();
+        }
+
+        assertEquals(List.of(Long.SIZE), receive(client, toClient.poll()));
+        assertFalse(client.receive(oldest, new ArrayList<>()));
+    }
+
+    @Test
+    void tamperedAndForeignPacketsAreRejected() throws IOException {
+        server.send(frame(1), Delivery.Unreliable);
+        ByteBuffer tampered = toClient.poll();
+        int last = tampered.limit() - 1;
+        tampered.put(last, (byte) (tampered.get(last) ^ 1));
+        assertFalse(client.receive(tampered, new ArrayList<>()));
+
+        // the client's own packets are sealed for the other direction.
+        client.send(frame(2), Delivery.Unreliable);
+        assertFalse(client.receive(toServer.poll(), new ArrayList<>()));
+    }
+
+    /** @return the numbers in the frames the packet made ready. */
+    private static List<Integer> receive(DatagramSession session, ByteBuffer packet) throws IOException {
+        List<ByteBuffer> frames = new ArrayList<>();
+        assertTrue(session.receive(packet, frames), "packet rejected");
+
+        List<Integer> numbers = new ArrayList<>();
+        MessageReader reader = new MessageReader();
+        for (ByteBuffer frame : frames) {
+            numbers.add(reader.wrapFrame(frame).readInt());
+        }
+        return numbers;
+    }
+
+    private static ByteBuffer frame(int number) throws IOException {
+        return copy(new FrameWriter().begin((byte) 1).writeInt(number).finish());
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        return ByteBuffer.allocate(buffer.remaining()).put(buffer.duplicate()).flip();
+    }
+}